@@ -0,0 +1,73 @@
+import java.util.Comparator;
+
+/**
+ * An implementation of a sorted map using an AVL tree. The aux field of each node holds the height
+ * of its subtree (0 for the sentinel leaves), and the heights of the two children of every node
+ * differ by at most one, so get, put and remove take O(log n) time for any order of the keys.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class AVLTreeMap<K, V> extends TreeMap<K, V> {
+
+    public AVLTreeMap() {super(); }
+
+    public AVLTreeMap(Comparator<K> comp) {super(comp); }
+
+    /**
+     * @return int the height of the subtree rooted at p, 0 for a leaf
+     */
+    protected int height(Position<Entry<K, V>> p) {return tree.getAux(p); }
+
+    /**
+     * Recomputes the height of p from the heights of its children.
+     */
+    private void recomputeHeight(Position<Entry<K, V>> p) {
+        tree.setAux(p, 1 + Math.max(height(left(p)), height(right(p))));
+    }
+
+    /**
+     * @return true if the heights of the children of p differ by at most one
+     */
+    private boolean isBalanced(Position<Entry<K, V>> p) {
+        return Math.abs(height(left(p)) - height(right(p))) <= 1;
+    }
+
+    /**
+     * Returns the child of p with the greater height. On a tie the child on the same side as p is
+     * chosen, so that restructure does a single rotation whenever it can.
+     * @param p an internal position
+     * @return Position of the taller child
+     */
+    private Position<Entry<K, V>> tallerChild(Position<Entry<K, V>> p) {
+        if (height(left(p)) > height(right(p))) return left(p);
+        if (height(left(p)) < height(right(p))) return right(p);
+        if (isRoot(p)) return left(p);
+        return (p == left(parent(p))) ? left(p) : right(p);
+    }
+
+    /**
+     * Walks up from p restoring the balance and the heights, and stops as soon as the height of
+     * a subtree stays the same.
+     * @param p the lowest position whose subtree may have changed
+     */
+    private void rebalance(Position<Entry<K, V>> p) {
+        int oldHeight, newHeight;
+        do {
+            oldHeight = height(p);
+            if (!isBalanced(p)) {
+                p = restructure(tallerChild(tallerChild(p)));
+                recomputeHeight(left(p));
+                recomputeHeight(right(p));
+            }
+            recomputeHeight(p);
+            newHeight = height(p);
+            p = parent(p);
+        } while (oldHeight != newHeight && p != null);
+    }
+
+    protected void rebalanceInsert(Position<Entry<K, V>> p) {rebalance(p); }
+
+    protected void rebalanceDelete(Position<Entry<K, V>> p) {
+        if (!isRoot(p)) rebalance(parent(p));
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.function.BiFunction;
 
 /**
  * An abstract base class for hash table implementations, extending the AbstractMap class
@@ -7,10 +8,48 @@ import java.util.Random;
  * @param <V> value element of the entry
  */
 public abstract class AbstractHashMap<K, V>  extends AbstractMap<K, V> {
+
+    /**
+     * The ways of turning a key into a hash code and a table index.
+     * MAD uses a randomized multiply-add-divide formula with a prime and any table length, which
+     * resists hash flooding. POWER_OF_TWO mixes the bits of hashCode() and masks the result into
+     * a table whose length is a power of two, which avoids the divisions on the hot path.
+     */
+    public enum HashMode {MAD, POWER_OF_TWO}
+
+    /*--------------Nested HashEntry class ------------------*/
+
+    /**
+     * An entry that caches the hash code of its key, so that probes and resizes can skip the
+     * entries with a different hash code without calling hashCode() or equals().
+     * @param <K> key element
+     * @param <V> value element
+     */
+    protected static class HashEntry<K, V> extends MapEntry<K, V> {
+        private final int hash;
+
+        public HashEntry(int hash, K key, V value) {
+            super(key, value);
+            this.hash = hash;
+        }
+
+        public int getHash() {return hash; }
+    } /*-------------------End of nested HashEntry class ---------------*/
+
     protected int n = 0; //number of entries in the HashMap
     protected int capacity; //length of the Table
+    protected int modCount = 0; //number of structural modifications, used by fail-fast iterators
+    private final HashMode mode; //hashing mode of the map
     private int prime; //prime factor
     private long scale, shift; //scaling and shifting factors
+    private long scale2, shift2; //factors of the secondary hash function
+    private final int minCapacity; //the table never shrinks below its initial length
+    private double maxLoad = 0.5, minLoad = 0.125; //load factors that trigger growing and shrinking
+    private int growAt, shrinkAt; //entry counts that trigger growing and shrinking for the current capacity
+    private boolean incremental = false; //spread the rehash over the following operations
+    private int oldCapacity; //length of the old table while a migration is in progress
+    private int migrateIndex = -1; //next bucket of the old table to migrate, -1 if none in progress
+    private static final int MIGRATION_STEPS = 4; //old buckets migrated on each operation
 
     /**
      * The constructor creates an empty hash map with the given prime factor and table length
@@ -18,27 +57,111 @@ public abstract class AbstractHashMap<K, V>  extends AbstractMap<K, V> {
      * @param cap int length of the table
      * @param p int prime factor
      */
-    public AbstractHashMap(int cap, int p) {
+    public AbstractHashMap(int cap, int p) {this(cap, p, HashMode.MAD); }
+
+    /**
+     * The constructor creates an empty hash map with the given table length and hashing mode,
+     * uses default prime value. In the POWER_OF_TWO mode the length is rounded up to a power of two.
+     * @param cap int length of the table
+     * @param mode hashing mode of the map
+     */
+    public AbstractHashMap(int cap, HashMode mode) {this(cap, 109345121, mode); }
+
+    /**
+     * The constructor creates an empty hash map with the given table length
+     * uses default prime value
+     * @param cap int length of the table
+     */
+    public AbstractHashMap(int cap) {this(cap, 109345121); }
+
+    /**
+     * Common constructor, creates random scale and shift factors for the MAD mode.
+     * @param cap int length of the table
+     * @param p int prime factor
+     * @param mode hashing mode of the map
+     */
+    private AbstractHashMap(int cap, int p, HashMode mode) {
+        this.mode = mode;
         prime = p;
-        capacity = cap;
+        capacity = (mode == HashMode.POWER_OF_TWO) ? powerOfTwo(cap) : cap;
+        minCapacity = capacity;
         Random random = new Random();
         scale = random.nextInt(prime - 1) + 1;
         shift = random.nextInt(prime);
+        newSecondaryHash();
+        updateThresholds();
         createTable();
     }
 
     /**
-     * The constructor creates an empty hash map with the given table length
-     * uses default prime value
-     * @param cap int length of the table
+     * @param cap int requested length of the table
+     * @return the least power of two greater than or equal to cap
      */
-    public AbstractHashMap(int cap) {this(cap, 109345121); }
+    private static int powerOfTwo(int cap) {
+        int length = 1;
+        while (length < cap) length <<= 1;
+        return length;
+    }
 
     /**
      * Default constructor creates an empty hash map with table length of 17
      */
     public AbstractHashMap() {this(17); }
 
+    /**
+     * Chooses between rehashing the whole table at once when it grows (the default) and migrating
+     * a few buckets of the old table on each get/put/remove, which keeps the latency of the single
+     * operation that triggers the growth flat. Subclasses that do not support the incremental mode
+     * always rehash at once.
+     * @param incremental true to spread the rehash over the following operations
+     */
+    public void setIncrementalResize(boolean incremental) {
+        if (!incremental) completeMigration();
+        this.incremental = incremental;
+    }
+
+    /**
+     * Sets the load factors of the map. The table grows when the ratio of entries to its length
+     * exceeds maxLoad, and shrinks (but never below its initial length) when the ratio drops
+     * below minLoad. The defaults are 0.5 and 0.125, a minLoad of 0 disables shrinking.
+     * @param maxLoad double load factor that triggers growing, 0 < maxLoad < 1
+     * @param minLoad double load factor that triggers shrinking, 0 <= minLoad < maxLoad / 2
+     * @throws IllegalArgumentException if the load factors are out of range
+     */
+    public void setLoadFactors(double maxLoad, double minLoad) throws IllegalArgumentException {
+        if (!(maxLoad > 0 && maxLoad < 1))
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1");
+        if (!(minLoad >= 0 && minLoad < maxLoad / 2))
+            throw new IllegalArgumentException("minLoad must be between 0 and maxLoad / 2");
+        checkLoadFactors(maxLoad, minLoad);
+        this.maxLoad = maxLoad;
+        this.minLoad = minLoad;
+        updateThresholds();
+    }
+
+    /**
+     * Hook called by setLoadFactors with valid load factors before they are applied, for the
+     * subclasses whose own settings depend on the load factors. It may reject them by throwing,
+     * or adjust those settings.
+     * @param maxLoad double new load factor that triggers growing
+     * @param minLoad double new load factor that triggers shrinking
+     * @throws IllegalArgumentException if the subclass rejects the load factors
+     */
+    protected void checkLoadFactors(double maxLoad, double minLoad) throws IllegalArgumentException {}
+
+    /**
+     * @return double the load factor that triggers growing
+     */
+    public double getMaxLoad() {return maxLoad; }
+
+    /**
+     * Recomputes the entry counts that trigger growing and shrinking for the current capacity.
+     */
+    private void updateThresholds() {
+        growAt = (int) (capacity * maxLoad);
+        shrinkAt = (int) Math.ceil(capacity * minLoad);
+    }
+
     /**
      * @return int the count of elements in the hash map
      */
@@ -49,14 +172,54 @@ public abstract class AbstractHashMap<K, V>  extends AbstractMap<K, V> {
      * @param key element of the entry
      * @return V value of the entry
      */
-    public V get(K key) {return bucketGet(hashValue(key), key); }
+    public V get(K key) {
+        int h = hash(key);
+        if (migrateIndex >= 0) migrate(h, key);
+        return bucketGet(h, key);
+    }
 
     /**
      * Remove the entry with the given key.
      * @param key of the entry to be removed
      * @return V value of the removed entry
      */
-    public V remove(K key) {return bucketRemove(hashValue(key), key); }
+    public V remove(K key) {
+        int h = hash(key);
+        if (migrateIndex >= 0) migrate(h, key);
+        V answer = bucketRemove(h, key);
+        shrinkIfNeeded();
+        return answer;
+    }
+
+    /**
+     * Halves the table if the entry count dropped below the shrink threshold, or rebuilds it
+     * if the subclass asks for a cleanup.
+     */
+    private void shrinkIfNeeded() {
+        if (n < shrinkAt && capacity > minCapacity)
+            resize(Math.max(minCapacity, mode == HashMode.POWER_OF_TWO ? capacity / 2 : (capacity + 1) / 2));
+        else if (needsCleanup())
+            resize(capacity);
+    }
+
+    /**
+     * Computes a new value for the given key from its current value, hashing the key once and
+     * leaving the search of the bucket to bucketCompute. A null result removes the entry.
+     * @param key key of the entry to be computed
+     * @param remappingFunction function of the key and the current value giving the new value
+     * @return the new value, or null if the map has no entry with the key afterwards
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        int h = hash(key);
+        if (migrateIndex >= 0) migrate(h, key);
+        int before = n;
+        V answer = bucketCompute(h, key, remappingFunction);
+        if (n > before)
+            growIfNeeded();
+        else if (n < before)
+            shrinkIfNeeded();
+        return answer;
+    }
 
     /**
      * Insert to or update the hash map with the given key-value pair.
@@ -65,43 +228,263 @@ public abstract class AbstractHashMap<K, V>  extends AbstractMap<K, V> {
      * @return null if the operation result with insert, the old V value otherwise
      */
     public V put(K key, V value) {
-        V answer = bucketPut(hashValue(key), key, value);
-        if (n > capacity / 2)
-            resize(2 * capacity - 1);
+        int h = hash(key);
+        if (migrateIndex >= 0) migrate(h, key);
+        V answer = bucketPut(h, key, value);
+        growIfNeeded();
         return answer;
     }
 
     /**
-     * Compute a hash value for the given key usin the MAD formula. (multiply, add, divide)
+     * Doubles the table if the entry count exceeds the grow threshold.
+     */
+    private void growIfNeeded() {
+        if (n > growAt || needsGrowth())
+            resize(mode == HashMode.POWER_OF_TWO ? 2 * capacity : 2 * capacity - 1);
+    }
+
+    /**
+     * Grows the table at once, if needed, so that it holds the given number of entries
+     * without growing again.
+     * @param expected int number of entries the map is going to hold
+     */
+    public void ensureCapacity(int expected) {
+        int needed = (int) Math.ceil(expected / maxLoad) + 1;
+        if (needed > capacity)
+            resize(mode == HashMode.POWER_OF_TWO ? powerOfTwo(needed) : needed | 1);
+        completeMigration();
+    }
+
+    /**
+     * Inserts or updates all the given entries. The table is grown once for the number of entries,
+     * and the hash codes of all the keys are computed before the first insert.
+     * @param entries iterable of the entries to be inserted (or updated if already exist)
+     */
+    public void putAll(Iterable<Entry<K, V>> entries) {
+        ArrayList<K> keys = new ArrayList<>();
+        ArrayList<V> values = new ArrayList<>();
+        for (Entry<K, V> e : entries) {
+            keys.add(e.getKey());
+            values.add(e.getValue());
+        }
+        putAll((K[]) keys.toArray(), (V[]) values.toArray());
+    }
+
+    /**
+     * Inserts or updates the pairs keys[i], values[i]. The table is grown once for the number of
+     * pairs, and the hash codes of all the keys are computed before the first insert.
+     * @param keys array of the keys
+     * @param values array of the values, of the same length
+     * @throws IllegalArgumentException if the arrays have different lengths
+     */
+    public void putAll(K[] keys, V[] values) throws IllegalArgumentException {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values must have the same length");
+        ensureCapacity(n + keys.length);
+        int[] hashes = hashAll(keys);
+        for (int i = 0; i < keys.length; i++) {
+            if (migrateIndex >= 0) migrate(hashes[i], keys[i]);
+            bucketPut(hashes[i], keys[i], values[i]);
+            growIfNeeded();
+        }
+    }
+
+    /**
+     * Looks up all the given keys, writing the value of keys[i] (or null) to out[i]. The hash codes
+     * of all the keys are computed before the first lookup.
+     * @param keys array of the keys
+     * @param out array that receives the values, at least as long as keys
+     * @return int number of keys found
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    public int getAll(K[] keys, V[] out) throws IllegalArgumentException {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException("out is shorter than keys");
+        int[] hashes = hashAll(keys);
+        completeMigration();
+        int found = 0;
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = bucketGet(hashes[i], keys[i]);
+            if (out[i] != null) found++;
+        }
+        return found;
+    }
+
+    /**
+     * Computes the hash codes of the given keys in a single pass.
+     * @param keys array of the keys
+     * @return int array of the hash codes
+     */
+    private int[] hashAll(K[] keys) {
+        int[] hashes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            hashes[i] = hash(keys[i]);
+        return hashes;
+    }
+
+    /**
+     * Compute a hash code for the given key. In the MAD mode it is the MAD formula
+     * (multiply, add, divide) without the final division by the table length, in the
+     * POWER_OF_TWO mode it is hashCode() with its high bits mixed into the low bits.
+     * @param key K type element to be hash coded.
+     * @return int hash code
+     */
+    protected int hash(K key) {
+        if (mode == HashMode.MAD)
+            return (int) (Math.abs(key.hashCode() * scale + shift) % prime);
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compute a second hash code for the given key, independent of hash(), with the MAD formula and
+     * its own scale and shift factors in both modes. Used by tables that give each key two buckets.
      * @param key K type element to be hash coded.
      * @return int hash code
      */
-    private int hashValue(K key) {
-        return (int) ((Math.abs(key.hashCode() * scale + shift) % prime) % capacity);
+    protected int secondaryHash(K key) {
+        return (int) (Math.abs(key.hashCode() * scale2 + shift2) % prime);
+    }
+
+    /**
+     * Draws new random scale and shift factors for secondaryHash(). The caller must then place
+     * its entries again.
+     */
+    protected void newSecondaryHash() {
+        Random random = new Random();
+        scale2 = random.nextInt(prime - 1) + 1;
+        shift2 = random.nextInt(prime);
+    }
+
+    /**
+     * Gives the index of the table for the given hash code.
+     * @param h int hash code computed by hash()
+     * @return int index in the range 0 to capacity-1
+     */
+    protected int index(int h) {return index(h, capacity); }
+
+    /**
+     * Gives the index of a table with the given length for the given hash code.
+     * @param h int hash code computed by hash()
+     * @param cap int length of the table
+     * @return int index in the range 0 to cap-1
+     */
+    protected int index(int h, int cap) {
+        return (mode == HashMode.MAD) ? h % cap : h & (cap - 1);
     }
 
     /**
-     * grow or shrink the hash map capacity (table length) by the given newCap value
+     * Gives the index following i in a table with the given length, without division.
+     * @param i int index
+     * @param cap int length of the table
+     * @return i + 1, or 0 if i is the last index
+     */
+    protected static int nextIndex(int i, int cap) {return (i + 1 == cap) ? 0 : i + 1; }
+
+    /**
+     * grow or shrink the hash map capacity (table length) by the given newCap value.
+     * The entries are moved into the new table by the subclass, either at once or
+     * bucket by bucket in the incremental mode. A newCap equal to the capacity rebuilds
+     * the table without changing its length.
      * @param newCap new capacity of the table.
      */
     private void resize(int newCap) {
-        ArrayList<Entry<K, V>> buffer = new ArrayList<>(n);
-        for (Entry<K, V> e : entrySet())
-            buffer.add(e);
+        completeMigration();
+        oldCapacity = capacity;
         capacity = newCap;
-        createTable();
-        n = 0;
-        for (Entry<K, V> e: buffer)
-            put(e.getKey(), e.getValue());
+        updateThresholds();
+        modCount++;
+        if (incremental && beginMigration())
+            migrateIndex = 0;
+        else
+            rehash();
+    }
+
+    /**
+     * Moves a few buckets of the old table to the new one, then the bucket of the given key
+     * so that the caller finds the key (if present) in the new table.
+     * @param h int hash code of the key
+     * @param key key of the entry about to be accessed
+     */
+    private void migrate(int h, K key) {
+        for (int i = 0; i < MIGRATION_STEPS && migrateIndex < oldCapacity; i++)
+            migrateBucket(migrateIndex++);
+        if (migrateIndex < oldCapacity)
+            migrateKey(h, key);
+        else {
+            migrateIndex = -1;
+            endMigration();
+        }
+    }
+
+    /**
+     * Finishes a migration in progress (if any) so that the whole map lives in the current table.
+     * Iterators call this before walking the table.
+     */
+    protected void completeMigration() {
+        if (migrateIndex < 0) return;
+        while (migrateIndex < oldCapacity)
+            migrateBucket(migrateIndex++);
+        migrateIndex = -1;
+        endMigration();
     }
 
+    /**
+     * Tells whether the table should be rebuilt at its current length after a removal, for example
+     * to clear the markers that removals leave behind. This version always returns false.
+     * @return true if the table should be rebuilt
+     */
+    protected boolean needsCleanup() {return false; }
+
+    /**
+     * Tells whether the table should grow after an insert although the entry count is below the
+     * grow threshold, for example when the subclass could not place an entry. This version always
+     * returns false.
+     * @return true if the table should grow
+     */
+    protected boolean needsGrowth() {return false; }
+
+    /**
+     * Moves every entry of the current table into a new table of length capacity, reusing the
+     * existing entry objects. The capacity is already updated when this method is called, and
+     * index(h, length) gives the index of a hash code in the old table.
+     */
+    protected abstract void rehash();
+
+    /**
+     * Keeps the current table as the old table and creates a new table of length capacity for an
+     * incremental migration. Subclasses that support the incremental mode override this method
+     * together with migrateBucket, migrateKey and endMigration.
+     * @return true if a migration is started, false to rehash the whole table at once
+     */
+    protected boolean beginMigration() {return false; }
+
+    /**
+     * Moves the entries of the bucket with index j of the old table into the new table.
+     * @param j int index of the bucket in the old table
+     */
+    protected void migrateBucket(int j) { }
+
+    /**
+     * Moves the entry with the given key (if any) from the old table into the new table.
+     * @param h int hash code of the key
+     * @param k K key element of the entry
+     */
+    protected void migrateKey(int h, K k) { }
+
+    /**
+     * Releases the old table once all of its buckets are migrated.
+     */
+    protected void endMigration() { }
+
     /**
      * Creates the underlying data structure for the hash map
      */
     protected abstract void createTable();
 
     /**
-     * Access the entry stored in the hash map with the given hash code and key
+     * Access the entry stored in the hash map with the given hash code and key.
+     * In the bucket methods h is the hash code computed by hash(), index(h) gives its bucket.
      * @param h int hash code of the entry
      * @param k key element of the entry
      * @return V value of the entry
@@ -118,6 +501,25 @@ public abstract class AbstractHashMap<K, V>  extends AbstractMap<K, V> {
      */
     protected abstract V bucketPut(int h, K k, V v);
 
+    /**
+     * Computes the new value of the entry with the given hash code and key, then stores it, or
+     * removes the entry if the new value is null. This version uses bucketGet and then bucketPut or
+     * bucketRemove; subclasses override it to search the bucket once.
+     * @param h int hash code of the entry
+     * @param k K key element of the entry
+     * @param f function of the key and the current value (or null) giving the new value
+     * @return V the new value
+     */
+    protected V bucketCompute(int h, K k, BiFunction<? super K, ? super V, ? extends V> f) {
+        V old = bucketGet(h, k);
+        V value = f.apply(k, old);
+        if (value != null)
+            bucketPut(h, k, value);
+        else if (old != null)
+            bucketRemove(h, k);
+        return value;
+    }
+
     /**
      * Remove an entry from the hash map.
      * @param h int hash code of the entry to be removed
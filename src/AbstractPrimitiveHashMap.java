@@ -0,0 +1,112 @@
+/**
+ * An abstract base class for the hash maps with primitive keys or values. These maps follow the
+ * design of ProbeHashMap, but store the keys and values unboxed in parallel arrays, so a lookup
+ * allocates nothing and a stored pair costs no entry object. The table length is a power of two,
+ * the keys are mixed with a multiplicative hash and masked into the table, collisions are resolved
+ * by linear probing, and removal shifts the following entries of the cluster back into the freed
+ * slot instead of leaving a defunct marker.
+ */
+public abstract class AbstractPrimitiveHashMap {
+    protected int n = 0; //number of entries in the map
+    protected int capacity; //length of the table, a power of two
+    protected int mask; //capacity - 1, turns a hash code into an index
+    protected int modCount = 0; //number of structural modifications, used by fail-fast iterators
+    private double maxLoad = 0.5; //load factor that triggers growing
+    private int growAt; //entry count that triggers growing for the current capacity
+
+    /**
+     * The constructor creates an empty map whose table length is the least power of two
+     * greater than or equal to the given length.
+     * @param cap int length of the table
+     */
+    public AbstractPrimitiveHashMap(int cap) {
+        capacity = 2;
+        while (capacity < cap) capacity <<= 1;
+        updateThresholds();
+        createTable();
+    }
+
+    /**
+     * Sets the load factor that triggers growing. The default is 0.5.
+     * @param maxLoad double load factor, 0 < maxLoad < 1
+     * @throws IllegalArgumentException if the load factor is out of range
+     */
+    public void setMaxLoad(double maxLoad) throws IllegalArgumentException {
+        if (!(maxLoad > 0 && maxLoad < 1))
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1");
+        this.maxLoad = maxLoad;
+        updateThresholds();
+    }
+
+    /**
+     * Recomputes the mask and the entry count that triggers growing for the current capacity.
+     */
+    private void updateThresholds() {
+        mask = capacity - 1;
+        growAt = (int) (capacity * maxLoad);
+    }
+
+    /**
+     * @return int the count of entries in the map
+     */
+    public int size() {return n; }
+
+    /**
+     * @return true if the map stores no entries
+     */
+    public boolean isEmpty() {return n == 0; }
+
+    /**
+     * Mixes the bits of an int key into a hash code whose low bits depend on all of its bits.
+     * @param key int key
+     * @return int hash code
+     */
+    protected static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Mixes the bits of a long key into an int hash code whose low bits depend on all of its bits.
+     * @param key long key
+     * @return int hash code
+     */
+    protected static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Tells whether the entry at slot j may be moved back into the freed slot i during a removal,
+     * which is the case unless its home slot lies cyclically between i (exclusive) and j (inclusive).
+     * @param i int index of the freed slot
+     * @param home int index of the home slot of the entry at j
+     * @param j int index of the entry
+     * @return true if the entry at j may fill slot i
+     */
+    protected static boolean canShift(int i, int home, int j) {
+        return (i <= j) ? (home <= i || home > j) : (home <= i && home > j);
+    }
+
+    /**
+     * Doubles the table if the number of entries exceeds the load factor, called after an insertion.
+     */
+    protected void checkGrow() {
+        if (n > growAt) {
+            capacity *= 2;
+            updateThresholds();
+            modCount++;
+            rehash();
+        }
+    }
+
+    /**
+     * Creates the arrays of the table with length capacity.
+     */
+    protected abstract void createTable();
+
+    /**
+     * Moves the entries of the current arrays into new arrays of length capacity.
+     */
+    protected abstract void rehash();
+}
@@ -0,0 +1,671 @@
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An implementation of a sorted map using a B+ tree. Every node keeps its keys in a sorted array
+ * that is searched by binary search, so a search visits one node per level of a tree whose height
+ * is about log(n) / log(order) instead of log2(n). The entries are kept in the leaves only, and
+ * the leaves are linked in the order of the keys, so entrySet() and subMap() scan the leaf arrays
+ * one after the other without going back up the tree.
+ *
+ * An inner node with k keys has k+1 children: keys[i] is not greater than any key of children[i+1]
+ * and greater than every key of children[i]. A leaf holds up to order entries and an inner node up
+ * to order children; except for the root, no node is less than half full, so get, put and remove
+ * take O(log n) time. The entries returned by the map are snapshots built from the leaf arrays.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class BPlusTreeMap<K, V> extends AbstractSortedMap<K, V> {
+    private static final int DEFAULT_ORDER = 64;
+
+    /*--------------Nested Node classes ------------------*/
+
+    /**
+     * A node of the tree with its sorted keys. The arrays have room for one more key than the
+     * node may keep, so a node can take an insert before it is split.
+     */
+    private static abstract class Node {
+        protected Object[] keys;
+        protected int size = 0; //number of keys
+
+        public Node(int capacity) {keys = new Object[capacity]; }
+    }
+
+    /**
+     * An inner node, whose children are the nodes between its keys.
+     */
+    private static class Inner extends Node {
+        private Node[] children;
+
+        public Inner(int order) {
+            super(order);
+            children = new Node[order + 1];
+        }
+    }
+
+    /**
+     * A leaf, which keeps the values of its keys and the links to its neighbor leaves.
+     */
+    private static class Leaf extends Node {
+        private Object[] values;
+        private Leaf prev, next;
+
+        public Leaf(int order) {
+            super(order + 1);
+            values = new Object[order + 1];
+        }
+    } /*-------------------End of nested Node classes ---------------*/
+
+    private final int order; //maximum number of entries of a leaf and of children of an inner node
+    private Node root;
+    private Leaf head; //the leaf with the least keys
+    private int n = 0; //number of entries
+    private int modCount = 0; //number of structural modifications, used by fail-fast iterators
+    private Node splitRight; //the new right sibling created by the last insert, or null
+    private K splitKey; //the least key of splitRight
+
+    /*Constructors*/
+    public BPlusTreeMap() {this(DEFAULT_ORDER); }
+    public BPlusTreeMap(Comparator<K> comp) {this(DEFAULT_ORDER, comp); }
+
+    /**
+     * Constructor, creates an empty map with the given fan-out using the natural order of the keys.
+     * @param order int maximum number of entries of a leaf and of children of an inner node, at least 4
+     * @throws IllegalArgumentException if order is less than 4
+     */
+    public BPlusTreeMap(int order) throws IllegalArgumentException {
+        super();
+        this.order = checkOrder(order);
+        clear();
+    }
+
+    /**
+     * Constructor, creates an empty map with the given fan-out that orders the keys by comp.
+     * @param order int maximum number of entries of a leaf and of children of an inner node, at least 4
+     * @param comp comparator of the keys
+     * @throws IllegalArgumentException if order is less than 4
+     */
+    public BPlusTreeMap(int order, Comparator<K> comp) throws IllegalArgumentException {
+        super(comp);
+        this.order = checkOrder(order);
+        clear();
+    }
+
+    private static int checkOrder(int order) throws IllegalArgumentException {
+        if (order < 4) throw new IllegalArgumentException("order must be at least 4");
+        return order;
+    }
+
+    /**
+     * Makes the map empty.
+     */
+    private void clear() {
+        head = new Leaf(order);
+        root = head;
+        n = 0;
+        modCount++;
+    }
+
+    /**
+     * @return int the count of entries in the map
+     */
+    public int size() {return n; }
+
+    /**
+     * @return int the fan-out of the tree
+     */
+    public int getOrder() {return order; }
+
+    /*Minimum occupancies of the nodes other than the root*/
+    private int minLeaf() {return order / 2; }
+    private int minInner() {return (order - 1) / 2; }
+
+    /**
+     * Binary search of the keys of a node.
+     * @param node node to search
+     * @param key a target key
+     * @return int index of the key, or -(insertion index + 1) if the node does not have it
+     */
+    private int search(Node node, K key) {
+        int low = 0, high = node.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comp = compare((K) node.keys[mid], key);
+            if (comp < 0) low = mid + 1;
+            else if (comp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @param node an inner node
+     * @param key a target key
+     * @return int index of the child of node whose subtree may hold the key
+     */
+    private int childIndex(Inner node, K key) {
+        int i = search(node, key);
+        return (i >= 0) ? i + 1 : -(i + 1);
+    }
+
+    /**
+     * @param key a target key
+     * @return the leaf whose range of keys includes the key
+     */
+    private Leaf findLeaf(K key) {
+        Node walk = root;
+        while (walk instanceof Inner)
+            walk = ((Inner) walk).children[childIndex((Inner) walk, key)];
+        return (Leaf) walk;
+    }
+
+    /**
+     * Returns the value associated with the specified key, or null if no such entry exists.
+     * @param key the key whose associated value is to be returned
+     * @return the associated value, or null if no such entry exists
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public V get(K key) throws IllegalArgumentException {
+        checkKey(key);
+        Leaf leaf = findLeaf(key);
+        int i = search(leaf, key);
+        return (i < 0) ? null : (V) leaf.values[i];
+    }
+
+    /**
+     * Associates the given value with the given key, replacing the value of an existing entry.
+     * A node that overflows is split in two halves, and a split of the root adds a level.
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key (or null, if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public V put(K key, V value) throws IllegalArgumentException {
+        checkKey(key);
+        V old = insert(root, key, value);
+        if (splitRight != null) {
+            Inner newRoot = new Inner(order);
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitRight;
+            newRoot.size = 1;
+            root = newRoot;
+            splitRight = null;
+        }
+        return old;
+    }
+
+    /**
+     * Inserts the entry into the subtree of node. If node splits, the new right sibling and its
+     * least key are left in splitRight and splitKey for the parent.
+     * @return the previous value associated with the key (or null, if no such entry)
+     */
+    private V insert(Node node, K key, V value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf, key);
+            if (i >= 0) {
+                V old = (V) leaf.values[i];
+                leaf.values[i] = value;
+                return old;
+            }
+            i = -(i + 1);
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+            System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.size - i);
+            leaf.keys[i] = key;
+            leaf.values[i] = value;
+            leaf.size++;
+            n++;
+            modCount++;
+            if (leaf.size > order) splitLeaf(leaf);
+            return null;
+        }
+        Inner inner = (Inner) node;
+        int c = childIndex(inner, key);
+        V old = insert(inner.children[c], key, value);
+        if (splitRight != null) {
+            System.arraycopy(inner.keys, c, inner.keys, c + 1, inner.size - c);
+            System.arraycopy(inner.children, c + 1, inner.children, c + 2, inner.size - c);
+            inner.keys[c] = splitKey;
+            inner.children[c + 1] = splitRight;
+            inner.size++;
+            splitRight = null;
+            if (inner.size == order) splitInner(inner);
+        }
+        return old;
+    }
+
+    /**
+     * Moves the upper half of the entries of an overflowing leaf into a new leaf after it.
+     */
+    private void splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(order);
+        int keep = (leaf.size + 1) / 2;
+        right.size = leaf.size - keep;
+        System.arraycopy(leaf.keys, keep, right.keys, 0, right.size);
+        System.arraycopy(leaf.values, keep, right.values, 0, right.size);
+        clearRange(leaf, keep, leaf.size);
+        leaf.size = keep;
+        right.next = leaf.next;
+        if (right.next != null) right.next.prev = right;
+        right.prev = leaf;
+        leaf.next = right;
+        splitRight = right;
+        splitKey = (K) right.keys[0];
+    }
+
+    /**
+     * Moves the upper half of the keys and children of an overflowing inner node into a new node,
+     * the middle key going up to the parent.
+     */
+    private void splitInner(Inner inner) {
+        Inner right = new Inner(order);
+        int keep = inner.size / 2;
+        splitKey = (K) inner.keys[keep];
+        right.size = inner.size - keep - 1;
+        System.arraycopy(inner.keys, keep + 1, right.keys, 0, right.size);
+        System.arraycopy(inner.children, keep + 1, right.children, 0, right.size + 1);
+        for (int i = keep; i < inner.size; i++) {
+            inner.keys[i] = null;
+            inner.children[i + 1] = null;
+        }
+        inner.size = keep;
+        splitRight = right;
+    }
+
+    /**
+     * Clears the slots from index from (inclusive) to index to (exclusive) of a leaf.
+     */
+    private static void clearRange(Leaf leaf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            leaf.keys[i] = null;
+            leaf.values[i] = null;
+        }
+    }
+
+    /**
+     * Removes the entry with the specified key, if present, and returns its value. A node that
+     * drops below half full borrows from a sibling or is merged with it, and a root left with a
+     * single child is replaced by the child.
+     * @param key the key whose entry is to be removed from the map
+     * @return the previous value associated with the removed key, or null if no such entry exists
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public V remove(K key) throws IllegalArgumentException {
+        checkKey(key);
+        V old = delete(root, key);
+        if (root instanceof Inner && root.size == 0)
+            root = ((Inner) root).children[0];
+        return old;
+    }
+
+    /**
+     * Removes the entry from the subtree of node, then repairs the child that lost an entry.
+     * @return the value of the removed entry, or null
+     */
+    private V delete(Node node, K key) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf, key);
+            if (i < 0) return null;
+            V old = (V) leaf.values[i];
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.size - i - 1);
+            System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.size - i - 1);
+            leaf.size--;
+            clearRange(leaf, leaf.size, leaf.size + 1);
+            n--;
+            modCount++;
+            return old;
+        }
+        Inner inner = (Inner) node;
+        int c = childIndex(inner, key);
+        Node child = inner.children[c];
+        V old = delete(child, key);
+        if (child instanceof Leaf ? child.size < minLeaf() : child.size < minInner())
+            repair(inner, c);
+        return old;
+    }
+
+    /**
+     * Refills the underfull child c of parent from its left or right sibling, or merges it with one.
+     */
+    private void repair(Inner parent, int c) {
+        Node child = parent.children[c];
+        Node left = (c > 0) ? parent.children[c - 1] : null;
+        Node right = (c < parent.size) ? parent.children[c + 1] : null;
+        if (child instanceof Leaf) {
+            if (left != null && left.size > minLeaf())
+                borrowFromLeft((Leaf) left, (Leaf) child, parent, c);
+            else if (right != null && right.size > minLeaf())
+                borrowFromRight((Leaf) child, (Leaf) right, parent, c);
+            else if (left != null)
+                mergeLeaves((Leaf) left, (Leaf) child, parent, c - 1);
+            else
+                mergeLeaves((Leaf) child, (Leaf) right, parent, c);
+        } else {
+            if (left != null && left.size > minInner())
+                borrowFromLeft((Inner) left, (Inner) child, parent, c);
+            else if (right != null && right.size > minInner())
+                borrowFromRight((Inner) child, (Inner) right, parent, c);
+            else if (left != null)
+                mergeInner((Inner) left, (Inner) child, parent, c - 1);
+            else
+                mergeInner((Inner) child, (Inner) right, parent, c);
+        }
+    }
+
+    private void borrowFromLeft(Leaf left, Leaf child, Inner parent, int c) {
+        System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+        System.arraycopy(child.values, 0, child.values, 1, child.size);
+        child.keys[0] = left.keys[left.size - 1];
+        child.values[0] = left.values[left.size - 1];
+        child.size++;
+        left.size--;
+        clearRange(left, left.size, left.size + 1);
+        parent.keys[c - 1] = child.keys[0];
+    }
+
+    private void borrowFromRight(Leaf child, Leaf right, Inner parent, int c) {
+        child.keys[child.size] = right.keys[0];
+        child.values[child.size] = right.values[0];
+        child.size++;
+        System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+        System.arraycopy(right.values, 1, right.values, 0, right.size - 1);
+        right.size--;
+        clearRange(right, right.size, right.size + 1);
+        parent.keys[c] = right.keys[0];
+    }
+
+    /**
+     * Appends the entries of right to left, unlinks right and removes the key at index k of
+     * parent with the child after it.
+     */
+    private void mergeLeaves(Leaf left, Leaf right, Inner parent, int k) {
+        System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+        System.arraycopy(right.values, 0, left.values, left.size, right.size);
+        left.size += right.size;
+        left.next = right.next;
+        if (left.next != null) left.next.prev = left;
+        removeFromInner(parent, k);
+    }
+
+    private void borrowFromLeft(Inner left, Inner child, Inner parent, int c) {
+        System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+        System.arraycopy(child.children, 0, child.children, 1, child.size + 1);
+        child.keys[0] = parent.keys[c - 1];
+        child.children[0] = left.children[left.size];
+        child.size++;
+        parent.keys[c - 1] = left.keys[left.size - 1];
+        left.keys[left.size - 1] = null;
+        left.children[left.size] = null;
+        left.size--;
+    }
+
+    private void borrowFromRight(Inner child, Inner right, Inner parent, int c) {
+        child.keys[child.size] = parent.keys[c];
+        child.children[child.size + 1] = right.children[0];
+        child.size++;
+        parent.keys[c] = right.keys[0];
+        System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+        System.arraycopy(right.children, 1, right.children, 0, right.size);
+        right.keys[right.size - 1] = null;
+        right.children[right.size] = null;
+        right.size--;
+    }
+
+    /**
+     * Appends the key at index k of parent and the keys and children of right to left, then
+     * removes that key of parent with the child after it.
+     */
+    private void mergeInner(Inner left, Inner right, Inner parent, int k) {
+        left.keys[left.size] = parent.keys[k];
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        left.size += right.size + 1;
+        removeFromInner(parent, k);
+    }
+
+    /**
+     * Removes the key at index k of an inner node and the child after it.
+     */
+    private static void removeFromInner(Inner node, int k) {
+        System.arraycopy(node.keys, k + 1, node.keys, k, node.size - k - 1);
+        System.arraycopy(node.children, k + 2, node.children, k + 1, node.size - k - 1);
+        node.size--;
+        node.keys[node.size] = null;
+        node.children[node.size + 1] = null;
+    }
+
+    /**
+     * Replaces the contents of the map with the given entries, building the tree bottom up in
+     * O(n) time: the leaves are filled in order and linked, then each level of inner nodes is
+     * built over the level below. All nodes are full except that the last two nodes of a level
+     * share their entries if the last one would be less than half full.
+     * @param keys array of the keys, in strictly increasing order
+     * @param values array of the values, of the same length
+     * @throws IllegalArgumentException if the arrays have different lengths or the keys are not
+     * in strictly increasing order
+     */
+    public void bulkLoad(K[] keys, V[] values) throws IllegalArgumentException {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values must have the same length");
+        for (int i = 0; i < keys.length; i++) {
+            checkKey(keys[i]);
+            if (i > 0 && compare(keys[i - 1], keys[i]) >= 0)
+                throw new IllegalArgumentException("keys must be in strictly increasing order");
+        }
+        clear();
+        if (keys.length == 0) return;
+        int[] sizes = groupSizes(keys.length, order, minLeaf());
+        Node[] level = new Node[sizes.length];
+        Object[] least = new Object[sizes.length]; //least key of each node of the level
+        Leaf prev = null;
+        for (int j = 0, from = 0; j < sizes.length; from += sizes[j++]) {
+            Leaf leaf = new Leaf(order);
+            System.arraycopy(keys, from, leaf.keys, 0, sizes[j]);
+            System.arraycopy(values, from, leaf.values, 0, sizes[j]);
+            leaf.size = sizes[j];
+            leaf.prev = prev;
+            if (prev != null) prev.next = leaf;
+            else head = leaf;
+            prev = leaf;
+            level[j] = leaf;
+            least[j] = keys[from];
+        }
+        while (level.length > 1) {
+            sizes = groupSizes(level.length, order, minInner() + 1);
+            Node[] upper = new Node[sizes.length];
+            Object[] upperLeast = new Object[sizes.length];
+            for (int j = 0, from = 0; j < sizes.length; from += sizes[j++]) {
+                Inner inner = new Inner(order);
+                System.arraycopy(level, from, inner.children, 0, sizes[j]);
+                System.arraycopy(least, from + 1, inner.keys, 0, sizes[j] - 1);
+                inner.size = sizes[j] - 1;
+                upper[j] = inner;
+                upperLeast[j] = least[from];
+            }
+            level = upper;
+            least = upperLeast;
+        }
+        root = level[0];
+        n = keys.length;
+    }
+
+    /**
+     * Splits count items into groups of at most max items, all full except the last two, which
+     * share their items if the last group would have less than min items.
+     * @return int array of the sizes of the groups
+     */
+    private static int[] groupSizes(int count, int max, int min) {
+        int groups = (count + max - 1) / max;
+        int[] sizes = new int[groups];
+        for (int j = 0; j < groups; j++)
+            sizes[j] = Math.min(max, count - j * max);
+        if (groups > 1 && sizes[groups - 1] < min) {
+            int both = sizes[groups - 2] + sizes[groups - 1];
+            sizes[groups - 2] = (both + 1) / 2;
+            sizes[groups - 1] = both / 2;
+        }
+        return sizes;
+    }
+
+    // additional behaviors of the SortedMap interface
+    /**
+     * @return a snapshot entry of the slot i of a leaf, or null if leaf is null
+     */
+    private Entry<K, V> entryAt(Leaf leaf, int i) {
+        return (leaf == null) ? null : new MapEntry<>((K) leaf.keys[i], (V) leaf.values[i]);
+    }
+
+    /**
+     * Returns the entry having the least key (or null if map is empty).
+     * @return entry with least key (or null if map is empty)
+     */
+    public Entry<K, V> firstEntry() {return isEmpty() ? null : entryAt(head, 0); }
+
+    /**
+     * Returns the entry having the greatest key (or null if map is empty).
+     * @return entry with greatest key (or null if map is empty)
+     */
+    public Entry<K, V> lastEntry() {
+        if (isEmpty()) return null;
+        Node walk = root;
+        while (walk instanceof Inner)
+            walk = ((Inner) walk).children[walk.size];
+        return entryAt((Leaf) walk, walk.size - 1);
+    }
+
+    /**
+     * Returns the entry with least key greater than (or equal to, if inclusive) the given key.
+     */
+    private Entry<K, V> higher(K key, boolean inclusive) {
+        checkKey(key);
+        Leaf leaf = findLeaf(key);
+        int i = search(leaf, key);
+        i = (i >= 0) ? (inclusive ? i : i + 1) : -(i + 1);
+        if (i == leaf.size) {
+            leaf = leaf.next;
+            i = 0;
+        }
+        return entryAt(leaf, i);
+    }
+
+    /**
+     * Returns the entry with greatest key less than (or equal to, if inclusive) the given key.
+     */
+    private Entry<K, V> lower(K key, boolean inclusive) {
+        checkKey(key);
+        Leaf leaf = findLeaf(key);
+        int i = search(leaf, key);
+        i = (i >= 0) ? (inclusive ? i : i - 1) : -(i + 1) - 1;
+        if (i < 0) {
+            leaf = leaf.prev;
+            if (leaf != null) i = leaf.size - 1;
+        }
+        return entryAt(leaf, i);
+    }
+
+    /**
+     * Returns the entry with least key greater than or equal to given key
+     * (or null if no such key exists).
+     * @return entry with least key greater than or equal to given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> ceilingEntry(K key) throws IllegalArgumentException {return higher(key, true); }
+
+    /**
+     * Returns the entry with greatest key less than or equal to given key
+     * (or null if no such key exists).
+     * @return entry with greatest key less than or equal to given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> floorEntry(K key) throws IllegalArgumentException {return lower(key, true); }
+
+    /**
+     * Returns the entry with greatest key strictly less than given key
+     * (or null if no such key exists).
+     * @return entry with greatest key strictly less than given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> lowerEntry(K key) throws IllegalArgumentException {return lower(key, false); }
+
+    /**
+     * Returns the entry with least key strictly greater than given key
+     * (or null if no such key exists).
+     * @return entry with least key strictly greater than given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> higherEntry(K key) throws IllegalArgumentException {return higher(key, false); }
+
+    /**
+     * Supporting classes for a lazy iterator that scans the slots of a leaf and then follows the
+     * link to the next leaf, until the first key that is not less than an optional bound.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private Leaf leaf; //leaf of the next entry
+        private int i; //slot of the next entry in leaf
+        private final K toKey; //bound of the range, null for the end of the map
+        private final int expectedModCount = modCount;
+
+        public EntryIterator(Leaf leaf, int i, K toKey) {
+            this.leaf = leaf;
+            this.i = i;
+            this.toKey = toKey;
+        }
+
+        public boolean hasNext() {
+            if (leaf != null && i == leaf.size) {
+                leaf = leaf.next;
+                i = 0;
+            }
+            return leaf != null && i < leaf.size && (toKey == null || compare((K) leaf.keys[i], toKey) < 0);
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return entryAt(leaf, i++);
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        private final K fromKey, toKey; //range of the keys, null for the whole map
+
+        public EntryIterable(K fromKey, K toKey) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+        }
+
+        public Iterator<Entry<K, V>> iterator() {
+            if (fromKey == null) return new EntryIterator(head, 0, toKey);
+            Leaf leaf = findLeaf(fromKey);
+            int i = search(leaf, fromKey);
+            return new EntryIterator(leaf, (i >= 0) ? i : -(i + 1), toKey);
+        }
+    }
+
+    /**
+     * Returns an iterable collection of all key-value entries of the map, in the order of the keys.
+     * @return iterable collection of the map's entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(null, null); }
+
+    /**
+     * Returns an iterable containing all entries with keys in the range from
+     * <code>fromKey</code> inclusive to <code>toKey</code> exclusive.
+     * @return iterable with keys in desired range
+     * @throws IllegalArgumentException if <code>fromKey</code> or <code>toKey</code> is not compatible with the map
+     */
+    public Iterable<Entry<K, V>> subMap(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        return new EntryIterable(fromKey, toKey);
+    }
+}
@@ -1,83 +1,417 @@
-import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
 
 /**
- * A hash map implementation using separate chaining. In this implementation every cell
- * of the table and the table itself is also are UnsortedTableMap.
+ * A hash map implementation using separate chaining. Every cell of the table holds a singly
+ * linked chain of entries, and each entry keeps the link to the next entry of its chain and the
+ * hash code of its key, so a bucket costs no object beyond its entries.
+ * A chain that grows longer than TREEIFY_THRESHOLD entries, which happens with poorly distributed
+ * or adversarial hash codes, is replaced by a TreeBin that finds its entries by binary search, and
+ * a TreeBin that shrinks to UNTREEIFY_THRESHOLD entries turns back into a chain.
  * @param <K> key element of the entries
  * @param <V> value element of the entries
  */
 public class ChainHashMap<K, V> extends AbstractHashMap<K, V> {
-    private UnsortedTableMap<K, V>[] table;
+
+    /*--------------Nested ChainEntry class ------------------*/
+
+    /**
+     * An entry of a chain, holds the link to the next entry of the same bucket.
+     * @param <K> key element
+     * @param <V> value element
+     */
+    private static class ChainEntry<K, V> extends HashEntry<K, V> {
+        private ChainEntry<K, V> next;
+
+        public ChainEntry(int hash, K key, V value, ChainEntry<K, V> next) {
+            super(hash, key, value);
+            this.next = next;
+        }
+    } /*-------------------End of nested ChainEntry class ---------------*/
+
+    /*--------------Nested TreeBin class ------------------*/
+
+    /**
+     * A bucket that keeps its entries in a SortedTableMap ordered by their cached hash codes, then
+     * by the natural order of the keys when all keys of the bin are of the same Comparable class.
+     * The table is keyed by the entries themselves; a lookup searches it with a probe entry holding
+     * the hash code and the key. Keys that compare equal without being equal share a slot of the
+     * table, chained by their links. A key of another class than the keys of the bin is ordered by
+     * its hash code only, so looking it up never calls compareTo() with a key it cannot compare.
+     * A TreeBin is stored in the table in place of the first entry of the chain.
+     * @param <K> key element
+     * @param <V> value element
+     */
+    private static class TreeBin<K, V> extends ChainEntry<K, V> {
+        private Class<?> comparableClass; //class of all keys if it is Comparable, null otherwise
+        private SortedTableMap<ChainEntry<K, V>, ChainEntry<K, V>> bin;
+        private int size = 0; //number of entries in the bin
+
+        /**
+         * Creates a bin holding the entries of the given chain.
+         * @param chain the first entry of a chain
+         */
+        public TreeBin(ChainEntry<K, V> chain) {
+            super(0, null, null, null);
+            comparableClass = (chain.getKey() instanceof Comparable) ? chain.getKey().getClass() : null;
+            for (ChainEntry<K, V> e = chain; e != null; e = e.next)
+                if (e.getKey().getClass() != comparableClass)
+                    comparableClass = null;
+            build(chain);
+        }
+
+        /**
+         * Creates the sorted table with the comparator of the bin and adds the entries of the chain.
+         * @param chain the first entry of a chain (may be null)
+         */
+        private void build(ChainEntry<K, V> chain) {
+            final Class<?> sameClass = comparableClass;
+            Comparator<ChainEntry<K, V>> comp = new Comparator<ChainEntry<K, V>>() {
+                public int compare(ChainEntry<K, V> a, ChainEntry<K, V> b) {
+                    int c = Integer.compare(a.getHash(), b.getHash());
+                    if (c != 0 || sameClass == null || a.getKey().getClass() != sameClass
+                            || b.getKey().getClass() != sameClass)
+                        return c;
+                    return ((Comparable<K>) a.getKey()).compareTo(b.getKey());
+                }
+            };
+            bin = new SortedTableMap<>(comp);
+            size = 0;
+            while (chain != null) {
+                ChainEntry<K, V> next = chain.next;
+                add(chain);
+                chain = next;
+            }
+        }
+
+        /**
+         * Gives the entry with the given hash code and key.
+         * @param h int hash code of the key
+         * @param k K key element
+         * @return the entry or null if there is no such entry
+         */
+        public ChainEntry<K, V> find(int h, K k) {
+            for (ChainEntry<K, V> e = bin.get(new ChainEntry<>(h, k, null, null)); e != null; e = e.next)
+                if (e.getHash() == h && e.getKey().equals(k))
+                    return e;
+            return null;
+        }
+
+        /**
+         * Adds an entry whose key is known to be absent from the bin. A key of another class
+         * than the keys of the bin switches the bin to the ordering by hash code only.
+         * @param entry the entry to be added
+         */
+        public void add(ChainEntry<K, V> entry) {
+            if (comparableClass != null && entry.getKey().getClass() != comparableClass) {
+                comparableClass = null;
+                entry.next = toChain();
+                build(entry);
+                return;
+            }
+            entry.next = bin.get(entry);
+            bin.put(entry, entry);
+            size++;
+        }
+
+        /**
+         * Removes the entry with the given hash code and key.
+         * @param h int hash code of the key
+         * @param k K key element
+         * @return the removed entry or null if there is no such entry
+         */
+        public ChainEntry<K, V> remove(int h, K k) {
+            ChainEntry<K, V> probe = new ChainEntry<>(h, k, null, null);
+            ChainEntry<K, V> first = bin.get(probe);
+            ChainEntry<K, V> prev = null;
+            for (ChainEntry<K, V> e = first; e != null; prev = e, e = e.next)
+                if (e.getHash() == h && e.getKey().equals(k)) {
+                    if (prev != null)
+                        prev.next = e.next;
+                    else {
+                        bin.remove(probe);
+                        if (e.next != null)
+                            bin.put(e.next, e.next);
+                    }
+                    size--;
+                    return e;
+                }
+            return null;
+        }
+
+        /**
+         * Links all entries of the bin into a single chain.
+         * @return the first entry of the chain
+         */
+        public ChainEntry<K, V> toChain() {
+            ChainEntry<K, V> chain = null;
+            for (Entry<ChainEntry<K, V>, ChainEntry<K, V>> slot : bin.entrySet()) {
+                ChainEntry<K, V> e = slot.getValue();
+                while (e != null) {
+                    ChainEntry<K, V> next = e.next;
+                    e.next = chain;
+                    chain = e;
+                    e = next;
+                }
+            }
+            return chain;
+        }
+    } /*-------------------End of nested TreeBin class ---------------*/
+
+    private static final int TREEIFY_THRESHOLD = 8; //a longer chain becomes a TreeBin
+    private static final int UNTREEIFY_THRESHOLD = 6; //a TreeBin of this size becomes a chain
+    private ChainEntry<K, V>[] table;
+    private ChainEntry<K, V>[] oldTable; //the table being migrated in the incremental mode
     public ChainHashMap() {super(); }
     public ChainHashMap(int cap) {super(cap); }
     public ChainHashMap(int cap, int p) {super(cap, p); }
+    public ChainHashMap(int cap, HashMode mode) {super(cap, mode); }
 
     /**
      * Create the main table of the hash map
      */
     protected void createTable() {
-        table = (UnsortedTableMap<K, V>[]) new UnsortedTableMap[capacity];
+        table = (ChainEntry<K, V>[]) new ChainEntry[capacity];
+    }
+
+    /**
+     * Moves the entries of the current table into a new table, reusing the entry objects.
+     */
+    protected void rehash() {
+        ChainEntry<K, V>[] old = table;
+        createTable();
+        for (ChainEntry<K, V> chain : old)
+            transfer(chain);
+    }
+
+    /**
+     * Links every entry of the given bucket into its bucket in the current table,
+     * placing it by its cached hash code.
+     * @param chain the first entry of a chain or a TreeBin of an old table (may be null)
+     */
+    private void transfer(ChainEntry<K, V> chain) {
+        if (chain instanceof TreeBin)
+            chain = ((TreeBin<K, V>) chain).toChain();
+        while (chain != null) {
+            ChainEntry<K, V> next = chain.next;
+            link(index(chain.getHash()), chain);
+            chain = next;
+        }
+    }
+
+    /**
+     * Adds an entry whose key is known to be absent from the map to the bucket i, and turns the
+     * bucket into a TreeBin if its chain gets longer than TREEIFY_THRESHOLD.
+     * @param i int index of the bucket
+     * @param entry the entry to be added
+     */
+    private void link(int i, ChainEntry<K, V> entry) {
+        if (table[i] instanceof TreeBin) {
+            ((TreeBin<K, V>) table[i]).add(entry);
+            return;
+        }
+        entry.next = table[i];
+        table[i] = entry;
+        int length = 0;
+        for (ChainEntry<K, V> e = entry; e != null; e = e.next)
+            length++;
+        if (length > TREEIFY_THRESHOLD)
+            table[i] = new TreeBin<>(entry);
+    }
+
+    /**
+     * Keeps the current table as the old table and creates an empty new table.
+     * @return true, this map supports the incremental mode
+     */
+    protected boolean beginMigration() {
+        oldTable = table;
+        createTable();
+        return true;
     }
 
     /**
-     * Gives the entry with the hash code of h and key element of k, uses the
-     * get() method of the underlying UnsortedTableMap
+     * Moves the bucket j of the old table into the new table.
+     * @param j int index of the bucket in the old table
+     */
+    protected void migrateBucket(int j) {
+        transfer(oldTable[j]);
+        oldTable[j] = null;
+    }
+
+    /**
+     * Moves the whole old bucket of the given key into the new table.
+     * @param h int hash code of the key
+     * @param k K key element of the entry
+     */
+    protected void migrateKey(int h, K k) {migrateBucket(index(h, oldTable.length)); }
+
+    /**
+     * Releases the old table.
+     */
+    protected void endMigration() {oldTable = null; }
+
+    /**
+     * Gives the entry of the chain at index(h) with the given hash code and key.
+     * @param h int hash code of the entry
+     * @param k key element of the entry
+     * @return the entry or null if there is no such entry
+     */
+    private ChainEntry<K, V> find(int h, K k) {
+        ChainEntry<K, V> first = table[index(h)];
+        if (first instanceof TreeBin)
+            return ((TreeBin<K, V>) first).find(h, k);
+        for (ChainEntry<K, V> e = first; e != null; e = e.next)
+            if (e.getHash() == h && e.getKey().equals(k))
+                return e;
+        return null;
+    }
+
+    /**
+     * Gives the value of the entry with the hash code of h and key element of k
      * @param h int hash code of the entry
      * @param k key element of the entry
      * @return V value of the entry
      */
     protected V bucketGet(int h, K k) {
-        UnsortedTableMap<K, V> bucket = table[h];
-        if (bucket == null) return null;
-        return bucket.get(k);
+        ChainEntry<K, V> e = find(h, k);
+        return (e == null) ? null : e.getValue();
     }
 
     /**
      * Insert an entry to the hash map using the given hash code, key  and value
-     * If there is an entry with the given hash code and key already exists, then update its value
-     * This method uses the put() method of the underlying UnsortedTableMap structure and
-     * re-calculates the size of the table.
+     * If there is an entry with the given hash code and key already exists, then update its value,
+     * otherwise link a new entry to the head of the chain or add it to the TreeBin.
      * @param h int hash code of the new entry
      * @param k K key element of the new entry
      * @param v V value element of the new entry, or the new value of the existing entry
      * @return null or the old value element of the existing entry
      */
     protected V bucketPut(int h, K k, V v) {
-        UnsortedTableMap<K, V> bucket = table[h];
-        if (bucket == null)
-            bucket = table[h] = new UnsortedTableMap<>();
-        int oldSize = bucket.size();
-        V oldValue = bucket.put(k, v);
-        n += (bucket.size() - oldSize);
-        return oldValue;
+        ChainEntry<K, V> e = find(h, k);
+        if (e != null)
+            return e.setValue(v);
+        link(index(h), new ChainEntry<>(h, k, v, null));
+        n++;
+        modCount++;
+        return null;
     }
 
     /**
-     * Remove an entry from the hash map using the remove() method of the underlying
-     * UnsortedTableMap and re-calculate the size of the main table.
+     * Computes the new value of the entry with the given hash code and key with a single search of
+     * its chain, then updates the entry, links a new one or unlinks it if the new value is null.
+     * @param h int hash code of the entry
+     * @param k K key element of the entry
+     * @param f function of the key and the current value (or null) giving the new value
+     * @return V the new value
+     * @throws ConcurrentModificationException if the function modifies the map
+     */
+    protected V bucketCompute(int h, K k, BiFunction<? super K, ? super V, ? extends V> f)
+            throws ConcurrentModificationException {
+        ChainEntry<K, V> e = find(h, k);
+        int expectedModCount = modCount;
+        V value = f.apply(k, (e == null) ? null : e.getValue());
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        if (value != null) {
+            if (e != null)
+                e.setValue(value);
+            else {
+                link(index(h), new ChainEntry<>(h, k, value, null));
+                n++;
+                modCount++;
+            }
+        } else if (e != null)
+            bucketRemove(h, k);
+        return value;
+    }
+
+    /**
+     * Remove an entry from the hash map by unlinking it from its chain or TreeBin.
      * @param h int hash code of the entry to be removed
      * @param k K key element of the entry to be removed
      * @return V value element of the removed entry
      */
     protected V bucketRemove(int h, K k) {
-        UnsortedTableMap<K, V> bucket = table[h];
-        if (bucket == null) return null;
-        int oldSize = bucket.size();
-        V removed = bucket.remove(k);
-        n -= (oldSize - bucket.size());
-        return removed;
+        int i = index(h);
+        if (table[i] instanceof TreeBin) {
+            TreeBin<K, V> bin = (TreeBin<K, V>) table[i];
+            ChainEntry<K, V> e = bin.remove(h, k);
+            if (e == null) return null;
+            if (bin.size <= UNTREEIFY_THRESHOLD)
+                table[i] = bin.toChain();
+            n--;
+            modCount++;
+            return e.getValue();
+        }
+        ChainEntry<K, V> prev = null;
+        for (ChainEntry<K, V> e = table[i]; e != null; prev = e, e = e.next)
+            if (e.getHash() == h && e.getKey().equals(k)) {
+                if (prev == null)
+                    table[i] = e.next;
+                else
+                    prev.next = e.next;
+                n--;
+                modCount++;
+                return e.getValue();
+            }
+        return null;
     }
 
     /**
-     * Return an iterable set of entries
-     * @return Iterable set of entries
+     * Supporting classes for a lazy iterator that walks the chains of the table in place.
+     * The iterator fails fast if the map is structurally modified after it is created.
      */
-    public Iterable<Entry<K, V>> entrySet() {
-        ArrayList<Entry<K, V>> buffer = new ArrayList<>();
-        for (int h = 0; h < capacity; h++)
-            if (table[h] != null)
-                for (Entry<K, V> entry : table[h].entrySet())
-                    buffer.add(entry);
-        return buffer;
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int h = 0; //index of the next bucket to test
+        private ChainEntry<K, V> next; //next entry to return
+        private Iterator<Entry<ChainEntry<K, V>, ChainEntry<K, V>>> slots; //remaining slots of the current TreeBin
+        private int expectedModCount;
+
+        public EntryIterator() {
+            completeMigration();
+            expectedModCount = modCount;
+        }
+
+        public boolean hasNext() {
+            while (next == null) {
+                if (slots != null && slots.hasNext())
+                    next = slots.next().getValue();
+                else if (h < capacity) {
+                    next = table[h++];
+                    slots = null;
+                    if (next instanceof TreeBin) {
+                        slots = ((TreeBin<K, V>) next).bin.entrySet().iterator();
+                        next = null;
+                    }
+                } else
+                    return false;
+            }
+            return true;
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            ChainEntry<K, V> answer = next;
+            next = next.next;
+            return answer;
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
     }
+
+    /**
+     * Return an iterable set of entries, which is a live view of the table rather than a copy
+     * @return Iterable set of entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
 }
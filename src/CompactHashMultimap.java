@@ -0,0 +1,354 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * A multimap with the same operations as HashMultimap that stores its keys by linear probing in
+ * parallel arrays, like ParallelArrayHashMap, instead of wrapping a java.util.HashMap of lists.
+ * The first value of every key is stored inline in its slot, and only a key with two or more
+ * values gets an array for the other values, which doubles when it is full. A key with a single
+ * value therefore costs no object at all, and a key with a few values costs one small array.
+ *
+ * A hash code of 0 marks an empty slot, so stored hash codes of 0 are replaced by 1. Removing the
+ * last value of a key shifts the following keys of the cluster back into the freed slot.
+ * get() on a missing key returns a shared empty list, and entries() creates the entries while
+ * iterating. The iterables returned by get() and entries() are read-only views that fail fast if
+ * the multimap is structurally modified.
+ * @param <K> key of an entry
+ * @param <V> value of an entry
+ */
+public class CompactHashMultimap<K, V> {
+    private static final double MAX_LOAD = 0.5; //ratio of keys to slots that triggers growing
+    private int[] hashes; //hash code of the key in each slot, 0 for an empty slot
+    private K[] keys; //key of each slot
+    private V[] firsts; //first value of the key in each slot
+    private Object[][] rests; //other values of the key in each slot, null for a single value
+    private int[] counts; //number of values of the key in each slot
+    private int capacity; //length of the arrays, a power of two
+    private int keyCount = 0; //number of distinct keys
+    private int total = 0; //number of key-value pairs
+    private int modCount = 0; //number of modifications, used by fail-fast iterators
+
+    /*Constructors*/
+    public CompactHashMultimap() {this(16); }
+
+    /**
+     * Constructor creates an empty multimap whose table length is the least power of two greater
+     * than or equal to the given length.
+     * @param cap int length of the table
+     */
+    public CompactHashMultimap(int cap) {
+        capacity = 2;
+        while (capacity < cap) capacity <<= 1;
+        createTable();
+    }
+
+    /**
+     * Create the arrays of the table
+     */
+    private void createTable() {
+        hashes = new int[capacity];
+        keys = (K[]) new Object[capacity];
+        firsts = (V[]) new Object[capacity];
+        rests = new Object[capacity][];
+        counts = new int[capacity];
+    }
+
+    public int size() {return total; }
+
+    public boolean isEmpty() {return total == 0; }
+
+    /**
+     * @return int the number of distinct keys
+     */
+    public int keyCount() {return keyCount; }
+
+    /**
+     * Mixes the high bits of hashCode() into the low bits that select the home slot.
+     * @param key key
+     * @return int hash code, never 0
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return (h == 0) ? 1 : h;
+    }
+
+    /**
+     * Returns the index of the slot with the given key, or the index of the empty slot that ends
+     * its probe sequence encoded as -(index + 1).
+     * @param h int hash code of the key
+     * @param key key
+     * @return int index of the key, or -(index + 1) of the empty slot
+     */
+    private int findSlot(int h, K key) {
+        int i = h & (capacity - 1);
+        while (hashes[i] != 0) {
+            if (hashes[i] == h && keys[i].equals(key))
+                return i;
+            i = (i + 1) & (capacity - 1);
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * Gives the j-th value of the key in slot i.
+     * @param i int index of a non-empty slot
+     * @param j int index of the value, less than counts[i]
+     * @return V value
+     */
+    private V valueAt(int i, int j) {return (j == 0) ? firsts[i] : (V) rests[i][j - 1]; }
+
+    /**
+     * Returns a read-only view of the values with the given key, or an empty list without
+     * creating any object if there is no such key.
+     * @param key key of the entry to search
+     * @return Iterable of the values
+     */
+    public Iterable<V> get(K key) {
+        int i = findSlot(hash(key), key);
+        if (i < 0) return Collections.emptyList();
+        return new ValueIterable(i);
+    }
+
+    /**
+     * inserts the key-value pair, if there is an entry with the given key, then it inserts this value
+     * for that key.
+     * @param key key of the entry to be inserted
+     * @param value value of the entry to be inserted
+     */
+    public void put(K key, V value) {
+        int h = hash(key);
+        int i = findSlot(h, key);
+        if (i >= 0) {
+            int c = counts[i];
+            if (c == 1)
+                rests[i] = new Object[2];
+            else if (c - 1 == rests[i].length)
+                rests[i] = Arrays.copyOf(rests[i], 2 * rests[i].length);
+            rests[i][c - 1] = value;
+            counts[i]++;
+        } else {
+            i = -(i + 1);
+            hashes[i] = h;
+            keys[i] = key;
+            firsts[i] = value;
+            counts[i] = 1;
+            keyCount++;
+        }
+        total++;
+        modCount++;
+        if (keyCount > capacity * MAX_LOAD)
+            resize(2 * capacity);
+    }
+
+    /**
+     * remove the given key-value pair from the map if there is a key-value pair matching the given.
+     * If there are any other values for this key, then it just removes this value. The key and the
+     * other values for this key remain.
+     * @param key key of the entry to be removed
+     * @param value value to be removed.
+     * @return true if the operation successful (there was value to remove, the value is removed)
+     */
+    public boolean remove(K key, V value) {
+        int i = findSlot(hash(key), key);
+        if (i < 0) return false;
+        int c = counts[i];
+        int j = 0;
+        while (j < c && !Objects.equals(valueAt(i, j), value)) j++;
+        if (j == c) return false;
+        total--;
+        modCount++;
+        if (c == 1) {
+            removeSlot(i);
+            return true;
+        }
+        if (j == 0)
+            firsts[i] = (V) rests[i][0];
+        else
+            j--;
+        System.arraycopy(rests[i], j + 1, rests[i], j, c - 2 - j); //close the gap at rests[i][j]
+        rests[i][c - 2] = null;
+        counts[i]--;
+        if (counts[i] == 1) rests[i] = null;
+        return true;
+    }
+
+    /**
+     * Removes the all entries with the given key.
+     * @param key key of the entries to be removed.
+     * @return an iterable of values that are removed.
+     */
+    public Iterable<V> removeAll(K key) {
+        int i = findSlot(hash(key), key);
+        if (i < 0) return Collections.emptyList();
+        List<V> removed = new ArrayList<>(counts[i]);
+        for (int j = 0; j < counts[i]; j++)
+            removed.add(valueAt(i, j));
+        total -= counts[i];
+        modCount++;
+        removeSlot(i);
+        return removed;
+    }
+
+    /**
+     * Empties the slot i, then shifts each following key of the cluster whose home slot does not
+     * lie between the freed slot and itself back into the freed slot.
+     * @param i int index of a non-empty slot
+     */
+    private void removeSlot(int i) {
+        int mask = capacity - 1;
+        int j = (i + 1) & mask;
+        while (hashes[j] != 0) {
+            int home = hashes[j] & mask;
+            //the key at j may fill slot i unless its home lies cyclically in (i, j]
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                move(j, i);
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        hashes[i] = 0;
+        keys[i] = null;
+        firsts[i] = null;
+        rests[i] = null;
+        counts[i] = 0;
+        keyCount--;
+    }
+
+    /**
+     * Copies the key and the values of slot from to slot to.
+     * @param from int index of the source slot
+     * @param to int index of the target slot
+     */
+    private void move(int from, int to) {
+        hashes[to] = hashes[from];
+        keys[to] = keys[from];
+        firsts[to] = firsts[from];
+        rests[to] = rests[from];
+        counts[to] = counts[from];
+    }
+
+    /**
+     * Moves the keys into new arrays of the given length, placing them by their stored hash codes.
+     * @param newCap int new length of the arrays, a power of two
+     */
+    private void resize(int newCap) {
+        int[] oldHashes = hashes;
+        K[] oldKeys = keys;
+        V[] oldFirsts = firsts;
+        Object[][] oldRests = rests;
+        int[] oldCounts = counts;
+        capacity = newCap;
+        createTable();
+        for (int j = 0; j < oldHashes.length; j++)
+            if (oldHashes[j] != 0) {
+                int i = oldHashes[j] & (capacity - 1);
+                while (hashes[i] != 0)
+                    i = (i + 1) & (capacity - 1);
+                hashes[i] = oldHashes[j];
+                keys[i] = oldKeys[j];
+                firsts[i] = oldFirsts[j];
+                rests[i] = oldRests[j];
+                counts[i] = oldCounts[j];
+            }
+    }
+
+    /**
+     * Passes every key-value pair to the given action without creating any entry object.
+     * @param action function called with each key and value
+     * @throws ConcurrentModificationException if the action modifies the multimap
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) throws ConcurrentModificationException {
+        int expectedModCount = modCount;
+        for (int i = 0; i < capacity; i++)
+            for (int j = 0; j < counts[i]; j++) {
+                action.accept(keys[i], valueAt(i, j));
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            }
+    }
+
+    /**
+     * Supporting classes for a lazy iterator over the values of a single key.
+     */
+    private class ValueIterator implements Iterator<V> {
+        private final int slot; //index of the slot of the key
+        private int j = 0; //index of the next value
+        private int expectedModCount = modCount;
+
+        public ValueIterator(int slot) {this.slot = slot; }
+
+        public boolean hasNext() {return j < counts[slot]; }
+
+        public V next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return valueAt(slot, j++);
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class ValueIterable implements Iterable<V> {
+        private final int slot; //index of the slot of the key
+        private final int createdModCount = modCount;
+
+        public ValueIterable(int slot) {this.slot = slot; }
+
+        public Iterator<V> iterator() {
+            if (modCount != createdModCount) throw new ConcurrentModificationException();
+            return new ValueIterator(slot);
+        }
+    }
+
+    /**
+     * Supporting classes for a lazy iterator over all key-value pairs, which walks the slots in place
+     * and creates each entry when it is returned.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private int i = 0; //index of the current slot
+        private int j = 0; //index of the next value in the current slot
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (i < capacity && j >= counts[i]) {
+                i++;
+                j = 0;
+            }
+            return i < capacity;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return new AbstractMap.SimpleImmutableEntry<>(keys[i], valueAt(i, j++));
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Map.Entry<K, V>> {
+        public Iterator<Map.Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Returns a lazy iterable of the key-value pairs.
+     * @return Iterable of entries.
+     */
+    public Iterable<Map.Entry<K, V>> entries() {return new EntryIterable(); }
+}
@@ -0,0 +1,439 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe hash map using separate chaining, like ChainHashMap. The buckets of the table are
+ * divided into stripes (bucket index modulo the number of stripes) and every stripe has its own
+ * lock, so writers of different stripes never wait for each other.
+ *
+ * Readers take no lock: the table cells are published through an AtomicReferenceArray, and the
+ * links and values of the entries are volatile, so a reader always sees a complete chain.
+ * Each stripe counts its own entries, and size() adds up the stripe counters instead of
+ * updating a single shared counter.
+ *
+ * The table doubles when a stripe exceeds its share of the load factor. A resize copies one stripe
+ * at a time into the new table while holding only the lock of that stripe, and leaves a forwarding
+ * entry in every cell of the old table, so the other stripes stay available and the operations that
+ * reach a forwarded cell continue in the new table. Doubling a table whose length is a multiple of
+ * the number of stripes keeps every key in the same stripe, so a stripe lock guards the same keys
+ * in both tables.
+ *
+ * Iterators are weakly consistent: they never throw ConcurrentModificationException and reflect
+ * some of the modifications made after their creation.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class ConcurrentChainHashMap<K, V> extends AbstractMap<K, V> {
+
+    /*--------------Nested Node class ------------------*/
+
+    /**
+     * An entry of a chain with its cached hash code and a volatile value and link.
+     * @param <K> key element
+     * @param <V> value element
+     */
+    private static class Node<K, V> implements Entry<K, V> {
+        private final int hash;
+        private final K key;
+        private volatile V value;
+        private volatile Node<K, V> next;
+
+        public Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        public K getKey() {return key; }
+        public V getValue() {return value; }
+    } /*-------------------End of nested Node class ---------------*/
+
+    /**
+     * The marker left in every cell of a table whose stripes have been moved to a larger table.
+     * @param <K> key element
+     * @param <V> value element
+     */
+    private static class ForwardingNode<K, V> extends Node<K, V> {
+        private final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        public ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(0, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    /**
+     * The lock of a stripe and the number of entries in its buckets.
+     */
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile int count = 0; //written only while holding the lock
+
+        public void lock() {lock.lock(); }
+        public void unlock() {lock.unlock(); }
+    }
+
+    private static final double MAX_LOAD = 0.75; //load factor that triggers growing
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+    private final Stripe[] stripes;
+    private final int stripeMask; //number of stripes - 1
+    private final AtomicBoolean resizing = new AtomicBoolean(false); //true while a resize is in progress
+
+    /**
+     * Default constructor creates an empty map with 16 stripes and a table of length 64.
+     */
+    public ConcurrentChainHashMap() {this(64, 16); }
+
+    /**
+     * The constructor creates an empty map. Both numbers are rounded up to powers of two, and the
+     * table length to at least the number of stripes.
+     * @param cap int length of the table
+     * @param concurrencyLevel int number of stripes, the number of writers that never wait for each other
+     */
+    public ConcurrentChainHashMap(int cap, int concurrencyLevel) {
+        int s = 1;
+        while (s < concurrencyLevel) s <<= 1;
+        int length = s;
+        while (length < cap) length <<= 1;
+        stripes = new Stripe[s];
+        for (int i = 0; i < s; i++)
+            stripes[i] = new Stripe();
+        stripeMask = s - 1;
+        table = new AtomicReferenceArray<>(length);
+    }
+
+    /**
+     * Mixes the high bits of hashCode() into the low bits that select the bucket.
+     * @param key K key
+     * @return int hash code
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Gives the sum of the entry counts of the stripes. While other threads modify the map
+     * the result is an estimate.
+     * @return int the count of entries in the map
+     */
+    public int size() {
+        long total = 0;
+        for (Stripe s : stripes)
+            total += s.count;
+        return (int) total;
+    }
+
+    /**
+     * Gives the value of the entry with the given key without locking.
+     * @param key element of the entry
+     * @return V value of the entry or null if there is no such entry
+     */
+    public V get(K key) {
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> t = table;
+        while (true) {
+            Node<K, V> e = t.get(h & (t.length() - 1));
+            if (e instanceof ForwardingNode) {
+                t = ((ForwardingNode<K, V>) e).nextTable;
+                continue;
+            }
+            for (; e != null; e = e.next)
+                if (e.hash == h && key.equals(e.key))
+                    return e.value;
+            return null;
+        }
+    }
+
+    /**
+     * Insert to or update the map with the given key-value pair, holding the lock of the stripe of the key.
+     * @param key key of the entry to be inserted (or updated if already exists)
+     * @param value value of the entry to be inserted (or updated if already exists)
+     * @return null if the operation result with insert, the old V value otherwise
+     */
+    public V put(K key, V value) {
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> t = table;
+        while (true) {
+            int i = h & (t.length() - 1);
+            Stripe s = stripes[i & stripeMask];
+            s.lock();
+            try {
+                Node<K, V> first = t.get(i);
+                if (first instanceof ForwardingNode) {
+                    t = ((ForwardingNode<K, V>) first).nextTable;
+                    continue;
+                }
+                for (Node<K, V> e = first; e != null; e = e.next)
+                    if (e.hash == h && key.equals(e.key)) {
+                        V old = e.value;
+                        e.value = value;
+                        return old;
+                    }
+                t.set(i, new Node<>(h, key, value, first));
+                s.count++;
+            } finally {
+                s.unlock();
+            }
+            if (s.count > MAX_LOAD * (t.length() / stripes.length))
+                resize(t);
+            return null;
+        }
+    }
+
+    /**
+     * Remove the entry with the given key, holding the lock of the stripe of the key.
+     * @param key of the entry to be removed
+     * @return V value of the removed entry or null if there is no such entry
+     */
+    public V remove(K key) {
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> t = table;
+        while (true) {
+            int i = h & (t.length() - 1);
+            Stripe s = stripes[i & stripeMask];
+            s.lock();
+            try {
+                Node<K, V> first = t.get(i);
+                if (first instanceof ForwardingNode) {
+                    t = ((ForwardingNode<K, V>) first).nextTable;
+                    continue;
+                }
+                Node<K, V> prev = null;
+                for (Node<K, V> e = first; e != null; prev = e, e = e.next)
+                    if (e.hash == h && key.equals(e.key)) {
+                        if (prev == null)
+                            t.set(i, e.next);
+                        else
+                            prev.next = e.next;
+                        s.count--;
+                        return e.value;
+                    }
+                return null;
+            } finally {
+                s.unlock();
+            }
+        }
+    }
+
+    /**
+     * Computes a new value for the given key from the key and its current value (null if there is
+     * no entry with the key) while holding the lock of the stripe of the key, so no other writer of
+     * the key runs between the read and the write. A null result removes the entry. The remapping
+     * function must not modify the map.
+     * @param key key of the entry to be computed
+     * @param remappingFunction function of the key and the current value giving the new value
+     * @return the new value, or null if the map has no entry with the key afterwards
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> t = table;
+        while (true) {
+            int i = h & (t.length() - 1);
+            Stripe s = stripes[i & stripeMask];
+            V value;
+            s.lock();
+            try {
+                Node<K, V> first = t.get(i);
+                if (first instanceof ForwardingNode) {
+                    t = ((ForwardingNode<K, V>) first).nextTable;
+                    continue;
+                }
+                Node<K, V> prev = null, e = first;
+                while (e != null && !(e.hash == h && key.equals(e.key))) {
+                    prev = e;
+                    e = e.next;
+                }
+                value = remappingFunction.apply(key, (e == null) ? null : e.value);
+                if (e != null) {
+                    if (value != null)
+                        e.value = value;
+                    else {
+                        if (prev == null)
+                            t.set(i, e.next);
+                        else
+                            prev.next = e.next;
+                        s.count--;
+                    }
+                    return value;
+                }
+                if (value == null) return null;
+                t.set(i, new Node<>(h, key, value, first));
+                s.count++;
+            } finally {
+                s.unlock();
+            }
+            if (s.count > MAX_LOAD * (t.length() / stripes.length))
+                resize(t);
+            return value;
+        }
+    }
+
+    /**
+     * Stores the value computed from the key if there is no entry with the key, a null result stores
+     * nothing. The test and the insert are done under the lock of the stripe of the key.
+     * @param key key of the entry
+     * @param mappingFunction function of the key giving the value
+     * @return the current (existing or computed) value, or null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V current = get(key);
+        if (current != null) return current;
+        return compute(key, (k, old) -> (old != null) ? old : mappingFunction.apply(k));
+    }
+
+    /**
+     * Stores the given value if there is no entry with the key, otherwise stores the value combined
+     * from the current one and the given one, under the lock of the stripe of the key. A null result
+     * removes the entry.
+     * @param key key of the entry
+     * @param value value to be stored or combined, not null
+     * @param remappingFunction function of the current value and the given value giving the new value
+     * @return the new value, or null if the entry is removed
+     * @throws IllegalArgumentException if the value is null
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        return compute(key, (k, old) -> (old == null) ? value : remappingFunction.apply(old, value));
+    }
+
+    /**
+     * Stores the given value if there is no entry with the key. Only one of the threads putting the
+     * same absent key gets null back.
+     * @param key key of the entry
+     * @param value value to be stored
+     * @return the current value of the key, or null if the value is stored
+     */
+    public V putIfAbsent(K key, V value) {
+        Object[] current = new Object[1]; //value found under the lock
+        compute(key, (k, old) -> {
+            current[0] = old;
+            return (old != null) ? old : value;
+        });
+        return (V) current[0];
+    }
+
+    /**
+     * Doubles the given table unless another thread is already resizing or has replaced it.
+     * The stripes are moved one at a time while holding only the lock of the stripe being moved.
+     * @param t the table that is too full
+     */
+    private void resize(AtomicReferenceArray<Node<K, V>> t) {
+        if (t != table || !resizing.compareAndSet(false, true)) return;
+        try {
+            if (t != table) return;
+            int length = t.length();
+            AtomicReferenceArray<Node<K, V>> next = new AtomicReferenceArray<>(2 * length);
+            ForwardingNode<K, V> forward = new ForwardingNode<>(next);
+            for (int s = 0; s < stripes.length; s++) {
+                stripes[s].lock();
+                try {
+                    for (int i = s; i < length; i += stripes.length) {
+                        split(t.get(i), i, length, next);
+                        t.set(i, forward);
+                    }
+                } finally {
+                    stripes[s].unlock();
+                }
+            }
+            table = next;
+        } finally {
+            resizing.set(false);
+        }
+    }
+
+    /**
+     * Distributes the chain of the bucket i of a table between the buckets i and i + length of the
+     * doubled table. The longest tail of the chain whose nodes all go to the same bucket is reused,
+     * the nodes before it are copied, so that readers still walking the old chain are not disturbed.
+     * @param first the first node of the chain
+     * @param i int index of the bucket in the old table
+     * @param length int length of the old table
+     * @param next the doubled table
+     */
+    private void split(Node<K, V> first, int i, int length, AtomicReferenceArray<Node<K, V>> next) {
+        if (first == null) return;
+        Node<K, V> lastRun = first;
+        int runBit = first.hash & length;
+        for (Node<K, V> e = first.next; e != null; e = e.next)
+            if ((e.hash & length) != runBit) {
+                runBit = e.hash & length;
+                lastRun = e;
+            }
+        Node<K, V> low = (runBit == 0) ? lastRun : null;
+        Node<K, V> high = (runBit == 0) ? null : lastRun;
+        for (Node<K, V> e = first; e != lastRun; e = e.next)
+            if ((e.hash & length) == 0)
+                low = new Node<>(e.hash, e.key, e.value, low);
+            else
+                high = new Node<>(e.hash, e.key, e.value, high);
+        next.set(i, low);
+        next.set(i + length, high);
+    }
+
+    /**
+     * Supporting classes for a weakly consistent iterator that walks the buckets of the current
+     * table and follows the forwarding entries into the larger tables.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private final AtomicReferenceArray<Node<K, V>> start = table;
+        private int i = 0; //index of the next bucket of the start table
+        private final ArrayDeque<Object> pending = new ArrayDeque<>(); //pairs of forwarded table and index
+        private Node<K, V> next; //next entry to return
+
+        public boolean hasNext() {
+            while (next == null) {
+                AtomicReferenceArray<Node<K, V>> t;
+                int j;
+                if (!pending.isEmpty()) {
+                    t = (AtomicReferenceArray<Node<K, V>>) pending.pop();
+                    j = (Integer) pending.pop();
+                } else if (i < start.length()) {
+                    t = start;
+                    j = i++;
+                } else
+                    return false;
+                Node<K, V> e = t.get(j);
+                if (e instanceof ForwardingNode) {
+                    AtomicReferenceArray<Node<K, V>> nt = ((ForwardingNode<K, V>) e).nextTable;
+                    pending.push(j + t.length());
+                    pending.push(nt);
+                    pending.push(j);
+                    pending.push(nt);
+                } else
+                    next = e;
+            }
+            return true;
+        }
+
+        public Entry<K, V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node<K, V> answer = next;
+            next = next.next;
+            return answer;
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Return a weakly consistent iterable set of entries
+     * @return Iterable set of entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
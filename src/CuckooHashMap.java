@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * CuckooHashMap class that uses bucketized cuckoo hashing for collision resolution.
+ * Every key may live in two buckets of BUCKET slots only: the bucket of hash() and the bucket of
+ * secondaryHash(). A lookup therefore reads at most two buckets, whatever the load of the table.
+ * The hash codes of a bucket are kept together in an int array (16 bytes per bucket) and its keys
+ * and values together in an Object array, so a miss compares two groups of four hash codes and
+ * calls equals() only when a hash code matches.
+ *
+ * When both buckets of a new key are full, an entry of one of them is evicted to its other bucket,
+ * which may evict another entry, and so on. A walk of more than MAX_KICKS evictions is taken as a
+ * cycle: the homeless entry goes to a small stash that lookups search only while it is not empty,
+ * and when the stash overflows the table is rebuilt with a new secondary hash function. If the
+ * rebuilt table still needs more than STASH stashed entries and is at least half full, the table
+ * grows on the next insert. Keys with equal hashCode() values share both buckets whatever the hash
+ * functions, so beyond 2 * BUCKET of them the extra ones stay in the stash; the next rebuild then
+ * waits until the stash doubles, so such keys do not rebuild the table on every insert.
+ * @param <K> key element of the entry
+ * @param <V> value element of the entry
+ */
+public class CuckooHashMap<K, V> extends AbstractHashMap<K, V> {
+    private static final int BUCKET = 4; //slots per bucket
+    private static final int MAX_KICKS = 128; //evictions of one insert before a cycle is assumed
+    private static final int STASH = 4; //entries the stash holds before the table is rebuilt
+    private static final int REBUILD_TRIES = 4; //secondary hash functions tried by one rebuild
+    private int[] hashes; //hash code of the key of each slot, BUCKET consecutive slots per bucket
+    private Object[] slots; //key of slot s at 2s, its value at 2s+1, null key if the slot is empty
+    private ArrayList<HashEntry<K, V>> stash; //entries that could not be placed in their buckets
+    private int buckets; //number of buckets, capacity / BUCKET
+    private int stashLimit = STASH; //stash size beyond which an insert rebuilds the table
+    private final Random random = new Random(); //chooses the evicted slot
+
+    /*Constructors*/
+    public CuckooHashMap() {this(64); }
+    public CuckooHashMap(int cap) {
+        super(Math.max(cap, BUCKET));
+        setLoadFactors(0.9, 0.2);
+    }
+    public CuckooHashMap(int cap, int p) {
+        super(Math.max(cap, BUCKET), p);
+        setLoadFactors(0.9, 0.2);
+    }
+    public CuckooHashMap(int cap, HashMode mode) {
+        super(Math.max(cap, BUCKET), mode);
+        setLoadFactors(0.9, 0.2);
+    }
+
+    /**
+     * Create the bucket arrays for capacity slots, rounded down to whole buckets, and an empty stash
+     */
+    protected void createTable() {
+        buckets = Math.max(1, capacity / BUCKET);
+        hashes = new int[buckets * BUCKET];
+        slots = new Object[2 * buckets * BUCKET];
+        stash = new ArrayList<>();
+    }
+
+    /**
+     * @return int the number of entries in the stash
+     */
+    public int stashSize() {return stash.size(); }
+
+    /**
+     * Asks AbstractHashMap to grow the table when a rebuild could not fit the entries in the stash.
+     * A table less than half full is not grown, its stashed entries are keys that collide in
+     * hashCode() and would not be placed by a larger table either.
+     * @return true if the stash holds more than STASH entries and the table is half full
+     */
+    protected boolean needsGrowth() {return stash.size() > STASH && n > capacity / 2; }
+
+    /**
+     * Places the entries of the current table and stash into the new table of length capacity,
+     * trying up to REBUILD_TRIES secondary hash functions, and sets the stash size of the next
+     * rebuild to at least twice the stash left by this one.
+     */
+    protected void rehash() {
+        int[] oldHashes = hashes;
+        Object[] oldSlots = slots;
+        ArrayList<HashEntry<K, V>> oldStash = stash;
+        for (int tries = 1; ; tries++) {
+            createTable();
+            for (int s = 0; s < oldHashes.length; s++)
+                if (oldSlots[2 * s] != null)
+                    place(oldHashes[s], (K) oldSlots[2 * s], (V) oldSlots[2 * s + 1]);
+            for (HashEntry<K, V> entry : oldStash)
+                place(entry.getHash(), entry.getKey(), entry.getValue());
+            if (stash.size() <= STASH || tries == REBUILD_TRIES) break;
+            newSecondaryHash();
+        }
+        stashLimit = Math.max(STASH, 2 * stash.size());
+    }
+
+    /**
+     * Rebuilds the table at its current length with a new secondary hash function, after a cycle
+     * with a full stash.
+     */
+    private void rebuild() {
+        newSecondaryHash();
+        rehash();
+        modCount++;
+    }
+
+    /**
+     * @param h int hash code computed by hash()
+     * @return int index of the first slot of the primary bucket
+     */
+    private int firstBucket(int h) {return index(h, buckets) * BUCKET; }
+
+    /**
+     * @param k key element
+     * @return int index of the first slot of the secondary bucket
+     */
+    private int secondBucket(K k) {return index(secondaryHash(k), buckets) * BUCKET; }
+
+    /**
+     * Searches the bucket starting at slot b for the given hash code and key.
+     * @param b int index of the first slot of the bucket
+     * @param h int hash code
+     * @param k key element
+     * @return int index of the slot with the key, or -1
+     */
+    private int search(int b, int h, K k) {
+        for (int s = b; s < b + BUCKET; s++)
+            if (hashes[s] == h && slots[2 * s] != null && slots[2 * s].equals(k))
+                return s;
+        return -1;
+    }
+
+    /**
+     * Returns the slot holding the given key in one of its two buckets, or -1.
+     * @param h int hash code
+     * @param k key element
+     * @return int index of the slot, or -1 if the key is not in the buckets
+     */
+    private int findSlot(int h, K k) {
+        int s = search(firstBucket(h), h, k);
+        return (s >= 0) ? s : search(secondBucket(k), h, k);
+    }
+
+    /**
+     * Returns the index of the stashed entry with the given key, or -1.
+     * @param h int hash code
+     * @param k key element
+     * @return int index in the stash, or -1
+     */
+    private int findStashed(int h, K k) {
+        for (int i = 0; i < stash.size(); i++)
+            if (stash.get(i).getHash() == h && stash.get(i).getKey().equals(k))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Stores an entry in the given slot.
+     */
+    private void set(int s, int h, K k, V v) {
+        hashes[s] = h;
+        slots[2 * s] = k;
+        slots[2 * s + 1] = v;
+    }
+
+    /**
+     * @param b int index of the first slot of a bucket
+     * @return int index of an empty slot of the bucket, or -1 if it is full
+     */
+    private int emptySlot(int b) {
+        for (int s = b; s < b + BUCKET; s++)
+            if (slots[2 * s] == null) return s;
+        return -1;
+    }
+
+    /**
+     * Places an entry whose key is absent from the table into one of its buckets, evicting other
+     * entries to their other buckets if both are full. An entry left homeless after MAX_KICKS
+     * evictions goes to the stash.
+     * @param h int hash code of the key
+     * @param k key element
+     * @param v value element
+     * @return true if the entry (or an evicted one) had to be stashed
+     */
+    private boolean place(int h, K k, V v) {
+        int b = firstBucket(h);
+        int s = emptySlot(b);
+        if (s < 0) {
+            b = secondBucket(k);
+            s = emptySlot(b);
+        }
+        for (int kicks = 0; s < 0 && kicks < MAX_KICKS; kicks++) {
+            //evict a random entry of the full bucket b and move it towards its other bucket
+            int victim = b + random.nextInt(BUCKET);
+            int vh = hashes[victim];
+            K vk = (K) slots[2 * victim];
+            V vv = (V) slots[2 * victim + 1];
+            set(victim, h, k, v);
+            h = vh;
+            k = vk;
+            v = vv;
+            int first = firstBucket(h);
+            b = (first != b) ? first : secondBucket(k);
+            s = emptySlot(b);
+        }
+        if (s < 0) {
+            stash.add(new HashEntry<>(h, k, v));
+            return true;
+        }
+        set(s, h, k, v);
+        return false;
+    }
+
+    /**
+     * Gives the value of the entry with the given hash code and key element or null if
+     * there is no such entry. Reads at most the two buckets of the key and the stash.
+     * @param h int hash code of the entry
+     * @param k key element of the entry
+     * @return V value
+     */
+    protected V bucketGet(int h, K k) {
+        int s = findSlot(h, k);
+        if (s >= 0) return (V) slots[2 * s + 1];
+        if (stash.isEmpty()) return null;
+        int i = findStashed(h, k);
+        return (i < 0) ? null : stash.get(i).getValue();
+    }
+
+    /**
+     * Associates key k with value v in one of the buckets of hash value h; returns old value.
+     * If placing the entry makes the stash hold more than stashLimit entries, the table is rebuilt
+     * with a new secondary hash function.
+     * @param h int hash code of the new entry
+     * @param k K key element of the new entry
+     * @param v V value element of the new entry, or the new value of the existing entry
+     * @return null or old value
+     */
+    protected V bucketPut(int h, K k, V v) {
+        int s = findSlot(h, k);
+        if (s >= 0) {
+            V old = (V) slots[2 * s + 1];
+            slots[2 * s + 1] = v;
+            return old;
+        }
+        int i = stash.isEmpty() ? -1 : findStashed(h, k);
+        if (i >= 0)
+            return stash.get(i).setValue(v);
+        n++;
+        modCount++;
+        if (place(h, k, v) && stash.size() > stashLimit)
+            rebuild();
+        return null;
+    }
+
+    /**
+     * Removes entry having key k from its bucket or the stash (if any).
+     * @param h int hash code of the entry to be removed
+     * @param k K key element of the entry to be removed
+     * @return returns the removed value of the entry
+     */
+    protected V bucketRemove(int h, K k) {
+        V removed;
+        int s = findSlot(h, k);
+        if (s >= 0) {
+            removed = (V) slots[2 * s + 1];
+            set(s, 0, null, null);
+        } else {
+            int i = stash.isEmpty() ? -1 : findStashed(h, k);
+            if (i < 0) return null;
+            removed = stash.remove(i).getValue();
+        }
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Supporting classes for a lazy iterator that walks the slots of the table, then the stash.
+     * The iterator fails fast if the map is structurally modified after it is created.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int s = 0; //index of the next slot to test, then slot count plus stash index
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (s < hashes.length && slots[2 * s] == null) s++;
+            return s < hashes.length + stash.size();
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            if (s >= hashes.length) {
+                HashEntry<K, V> e = stash.get(s++ - hashes.length);
+                return new MapEntry<>(e.getKey(), e.getValue());
+            }
+            s++;
+            return new MapEntry<>((K) slots[2 * s - 2], (V) slots[2 * s - 1]);
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Returns an iterable collection of all key-value entries of the map. The entries are
+     * snapshots, setting their values does not change the map.
+     * @return Iterable collection of all the entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
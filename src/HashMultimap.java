@@ -1,54 +1,131 @@
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 
 /**
  * An implementation of a multimap as an adaptation of classes from the java.util package
- * Uses an ArrayList collection for multiple keys, combines all values with the same key into
- * a list and the list becomes the "value" of the entry.
+ * Combines all values with the same key into a collection and the collection becomes the "value"
+ * of the entry. The kind of the collection is chosen by the ValueMode given at construction:
+ * LIST keeps the values in insertion order with duplicates in an ArrayList, SET keeps every value
+ * once, SORTED keeps the values in order with duplicates and answers range queries per key.
+ * In the SET and SORTED modes the collection of a key starts as a small list and switches to a
+ * HashSet or a TreeMap by itself once the key has more values than a list handles well.
+ * In the SORTED mode the comparator orders the values, and equals() tells two values apart.
  * @param <K> key of an entry
  * @param <V> value of an entry
  */
 public class HashMultimap<K, V> {
-    //keep all values of a key in a list
-    Map<K, List<V>> map = new HashMap<>();
+
+    /**
+     * The kinds of the collections that hold the values of a key.
+     * LIST allows duplicates and removes by a linear scan, SET ignores duplicates and removes in
+     * constant time, SORTED allows duplicates and finds, removes and ranges by binary search.
+     */
+    public enum ValueMode {LIST, SET, SORTED}
+
+    private static final int SMALL_SET_LIMIT = 8; //a SET collection with more values becomes a HashSet
+    private static final int SMALL_SORTED_LIMIT = 64; //a SORTED collection with more values becomes a TreeMap
+
+    //keep all values of a key in a collection
+    Map<K, Collection<V>> map = new HashMap<>();
     int total = 0;
+    private final ValueMode mode;
+    private final Comparator<? super V> comp; //order of the values in the SORTED mode
+
+    public HashMultimap() {this(ValueMode.LIST); }
+
+    /**
+     * Constructor creates an empty multimap whose value collections are of the given mode. In the
+     * SORTED mode the values are ordered by their natural order.
+     * @param mode kind of the value collections
+     */
+    public HashMultimap(ValueMode mode) {
+        this.mode = mode;
+        comp = null;
+    }
 
-    public HashMultimap() {}
+    /**
+     * Constructor creates an empty multimap in the SORTED mode that orders the values of a key by
+     * the given comparator.
+     * @param comp comparator of the values
+     */
+    public HashMultimap(Comparator<? super V> comp) {
+        mode = ValueMode.SORTED;
+        this.comp = comp;
+    }
 
     public int size() {return total; }
 
     public boolean isEmpty() {return total == 0; }
 
     /**
-     * Returns a list of values with the given key if exists, an empty list otherwise
+     * @return the mode of the value collections
+     */
+    public ValueMode getValueMode() {return mode; }
+
+    /**
+     * Returns the collection of values with the given key if exists, an empty list otherwise
      * @param key key of the entry to search
-     * @return ArrayList of the values
+     * @return Iterable of the values
      */
     public Iterable<V> get(K key) {
-        List<V> secondary = map.get(key);
+        Collection<V> secondary = map.get(key);
         if (secondary != null)
             return secondary;
         return new ArrayList<>();
     }
 
+    /**
+     * Tests if the given key-value pair is in the multimap, in constant time in the SET mode and by
+     * binary search in the SORTED mode.
+     * @param key key of the entry
+     * @param value value of the entry
+     * @return true if the pair is in the multimap
+     */
+    public boolean containsEntry(K key, V value) {
+        Collection<V> secondary = map.get(key);
+        return secondary != null && secondary.contains(value);
+    }
+
     /**
      * inserts the key-value pair, if there is an entry with the given key, then it inserts this value
-     * for that key.
+     * for that key. In the SET mode a pair that is already in the multimap is not inserted again.
      * @param key key of the entry to be inserted
      * @param value value of the entry to be inserted
      */
     public void put(K key, V value) {
-        List<V> secondary = map.get(key);
+        Collection<V> secondary = map.get(key);
         if (secondary == null) {
-            secondary = new ArrayList<>();
+            secondary = newCollection();
             map.put(key, secondary);
+        } else if (secondary instanceof SmallSet && secondary.size() >= SMALL_SET_LIMIT) {
+            secondary = new HashSet<>(secondary);
+            map.put(key, secondary);
+        }
+        if (secondary.add(value))
+            total++;
+    }
+
+    /**
+     * @return an empty collection of the mode of the multimap
+     */
+    private Collection<V> newCollection() {
+        switch (mode) {
+            case SET: return new SmallSet<>();
+            case SORTED: return new SortedValues();
+            default: return new ArrayList<>();
         }
-        secondary.add(value);
-        total++;
     }
 
     /**
@@ -61,7 +138,7 @@ public class HashMultimap<K, V> {
      */
     public boolean remove(K key, V value) {
         boolean wasRemoved = false;
-        List<V> secondary = map.get(key);
+        Collection<V> secondary = map.get(key);
         if (secondary != null) {
             wasRemoved = secondary.remove(value);
             if (wasRemoved) {
@@ -79,7 +156,7 @@ public class HashMultimap<K, V> {
      * @return an iterable of values that are removed.
      */
     public Iterable<V> removeAll(K key) {
-        List<V> secondary = map.get(key);
+        Collection<V> secondary = map.get(key);
         if (secondary != null) {
             total -= secondary.size();
             map.remove(key);
@@ -89,17 +166,180 @@ public class HashMultimap<K, V> {
         return secondary;
     }
 
+    /**
+     * Returns the values of the given key that are greater than or equal to fromValue and less than
+     * toValue, in order. Available in the SORTED mode only.
+     * @param key key of the entries
+     * @param fromValue least value of the range
+     * @param toValue value after the range
+     * @return an iterable of the values in the range
+     * @throws UnsupportedOperationException if the multimap is not in the SORTED mode
+     */
+    public Iterable<V> getRange(K key, V fromValue, V toValue) throws UnsupportedOperationException {
+        if (mode != ValueMode.SORTED)
+            throw new UnsupportedOperationException("range queries need the SORTED mode");
+        SortedValues secondary = (SortedValues) map.get(key);
+        if (secondary == null) return new ArrayList<>();
+        return secondary.range(fromValue, toValue);
+    }
+
     /**
      * Returns an ArrayList of the distinct key-value pairs.
      * @return ArrayList of entries.
      */
     public Iterable<Map.Entry<K, V>> entries() {
         List<Map.Entry<K, V>> result = new ArrayList<>();
-        for (Map.Entry<K, List<V>> secondary : map.entrySet()) {
+        for (Map.Entry<K, Collection<V>> secondary : map.entrySet()) {
             K key = secondary.getKey();
             for (V value : secondary.getValue())
                 result.add(new AbstractMap.SimpleEntry<K, V>(key, value));
         }
         return result;
     }
+
+    /**
+     * The collection of a key in the SET mode while it has few values: an ArrayList that ignores
+     * the values it already contains.
+     * @param <V> value element
+     */
+    private static class SmallSet<V> extends ArrayList<V> {
+        private static final long serialVersionUID = 1L;
+
+        public boolean add(V value) {return !contains(value) && super.add(value); }
+    }
+
+    /**
+     * The collection of a key in the SORTED mode. It keeps the values in a sorted ArrayList, found
+     * by binary search, while it has at most SMALL_SORTED_LIMIT values, then in a TreeMap from each
+     * class of values that the comparator finds equal to the list of those values. The comparator
+     * only finds the run of such values; contains and remove test the values of the run by equals().
+     */
+    private class SortedValues extends AbstractCollection<V> {
+        private ArrayList<V> small = new ArrayList<>(); //the sorted values, null once the TreeMap is used
+        private TreeMap<V, List<V>> large; //the values of each class of equal values under the comparator
+        private int size = 0;
+
+        /**
+         * Compares two values by the comparator of the multimap or by their natural order.
+         */
+        private int compare(V a, V b) {
+            return (comp != null) ? comp.compare(a, b) : ((Comparable<? super V>) a).compareTo(b);
+        }
+
+        /**
+         * Gives the least index of the small list whose value is not less than the given value,
+         * or the first index whose value is greater if after is true.
+         * @param value value to search
+         * @param after true to skip the values equal to the given value
+         * @return int index in the range 0 to small.size()
+         */
+        private int search(V value, boolean after) {
+            int low = 0, high = small.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int c = compare(small.get(mid), value);
+                if (c < 0 || (after && c == 0)) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * Gives the index of the small list holding a value equal to the given one by equals(),
+         * searching only the run of values that the comparator finds equal to it.
+         * @param value value to search
+         * @return int index of the value, or -1
+         */
+        private int indexOf(V value) {
+            for (int i = search(value, false); i < small.size() && compare(small.get(i), value) == 0; i++)
+                if (small.get(i).equals(value)) return i;
+            return -1;
+        }
+
+        public int size() {return size; }
+
+        public boolean add(V value) {
+            if (large != null)
+                large.computeIfAbsent(value, v -> new ArrayList<>()).add(value);
+            else {
+                small.add(search(value, true), value);
+                if (small.size() > SMALL_SORTED_LIMIT) {
+                    large = new TreeMap<>(comp);
+                    for (V v : small)
+                        large.computeIfAbsent(v, x -> new ArrayList<>()).add(v);
+                    small = null;
+                }
+            }
+            size++;
+            return true;
+        }
+
+        public boolean contains(Object value) {
+            if (large == null) return indexOf((V) value) >= 0;
+            List<V> run = large.get(value);
+            return run != null && run.contains(value);
+        }
+
+        public boolean remove(Object value) {
+            if (large != null) {
+                List<V> run = large.get(value);
+                if (run == null || !run.remove(value)) return false;
+                if (run.isEmpty())
+                    large.remove(value);
+            } else {
+                int i = indexOf((V) value);
+                if (i < 0) return false;
+                small.remove(i);
+            }
+            size--;
+            return true;
+        }
+
+        /**
+         * @param fromValue least value of the range
+         * @param toValue value after the range
+         * @return the values in the range, in order
+         */
+        public Iterable<V> range(V fromValue, V toValue) {
+            if (large == null) {
+                int from = search(fromValue, false);
+                int to = Math.max(from, search(toValue, false));
+                return Collections.unmodifiableList(small.subList(from, to));
+            }
+            if (compare(fromValue, toValue) >= 0) return new ArrayList<>();
+            return new Expanded(large.subMap(fromValue, true, toValue, false).values());
+        }
+
+        public Iterator<V> iterator() {
+            if (large == null) return Collections.unmodifiableList(small).iterator();
+            return new Expanded(large.values()).iterator();
+        }
+    }
+
+    /**
+     * An iterable over the values of a sequence of lists, one list after the other.
+     */
+    private class Expanded implements Iterable<V> {
+        private final Iterable<List<V>> runs;
+
+        public Expanded(Iterable<List<V>> runs) {this.runs = runs; }
+
+        public Iterator<V> iterator() {
+            final Iterator<List<V>> lists = runs.iterator();
+            return new Iterator<V>() {
+                private Iterator<V> run = Collections.emptyIterator(); //list being walked
+
+                public boolean hasNext() {
+                    while (!run.hasNext() && lists.hasNext())
+                        run = lists.next().iterator();
+                    return run.hasNext();
+                }
+
+                public V next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return run.next();
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,179 @@
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A hash map from int keys to int values that stores both unboxed in two parallel arrays, about
+ * 16 bytes per entry at the default load factor. The key 0 marks an empty slot, so an entry with
+ * the key 0 is kept in a separate field. Missing keys are reported with a configurable value.
+ */
+public class IntIntHashMap extends AbstractPrimitiveHashMap {
+    private int[] keys; //key of each slot, 0 for an empty slot
+    private int[] values; //value of each slot
+    private boolean hasZeroKey; //true if the map has an entry with the key 0
+    private int zeroValue; //value of the entry with the key 0
+    private final int noEntryValue; //value returned for missing keys
+
+    /*Constructors*/
+    public IntIntHashMap() {this(16); }
+    public IntIntHashMap(int cap) {this(cap, 0); }
+
+    /**
+     * Constructor creates an empty map with the given table length.
+     * @param cap int length of the table
+     * @param noEntryValue int value returned by get, put and remove for missing keys
+     */
+    public IntIntHashMap(int cap, int noEntryValue) {
+        super(cap);
+        this.noEntryValue = noEntryValue;
+    }
+
+    /**
+     * Create the arrays of the table
+     */
+    protected void createTable() {
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Moves the entries of the current arrays into new arrays of length capacity.
+     */
+    protected void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        createTable();
+        for (int j = 0; j < oldKeys.length; j++)
+            if (oldKeys[j] != 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+    }
+
+    /**
+     * Returns the index of the slot with the given non-zero key, or the index of the empty slot
+     * that ends its probe sequence encoded as -(index + 1).
+     * @param key int key
+     * @return int index of the key, or -(index + 1) of the empty slot
+     */
+    private int findSlot(int key) {
+        int i = hash(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * @param key int key
+     * @return the value associated with the key, or the no-entry value if there is no such entry
+     */
+    public int get(int key) {
+        if (key == 0) return hasZeroKey ? zeroValue : noEntryValue;
+        int i = findSlot(key);
+        return (i < 0) ? noEntryValue : values[i];
+    }
+
+    /**
+     * @param key int key
+     * @return true if the map has an entry with the key
+     */
+    public boolean containsKey(int key) {
+        if (key == 0) return hasZeroKey;
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Associates the value with the key.
+     * @param key int key
+     * @param value int value
+     * @return the old value of the key, or the no-entry value if the key is new
+     */
+    public int put(int key, int value) {
+        if (key == 0) {
+            int old = hasZeroKey ? zeroValue : noEntryValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                n++;
+                modCount++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int i = findSlot(key);
+        if (i >= 0) {
+            int old = values[i];
+            values[i] = value;
+            return old;
+        }
+        i = -(i + 1);
+        keys[i] = key;
+        values[i] = value;
+        n++;
+        modCount++;
+        checkGrow();
+        return noEntryValue;
+    }
+
+    /**
+     * Removes the entry with the given key, then shifts the following entries of the cluster back.
+     * @param key int key
+     * @return the value of the removed entry, or the no-entry value if there is no such entry
+     */
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey) return noEntryValue;
+            hasZeroKey = false;
+            n--;
+            modCount++;
+            return zeroValue;
+        }
+        int i = findSlot(key);
+        if (i < 0) return noEntryValue;
+        int removed = values[i];
+        int j = (i + 1) & mask;
+        while (keys[j] != 0) {
+            if (canShift(i, hash(keys[j]) & mask, j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[i] = 0;
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Gives an iterator over the keys of the map that does not box them. The iterator fails fast
+     * if the map is structurally modified after it is created.
+     * @return iterator of the keys
+     */
+    public PrimitiveIterator.OfInt keyIterator() {return new KeyIterator(); }
+
+    /**
+     * Supporting class for the key iterator, walks the key array in place.
+     */
+    private class KeyIterator implements PrimitiveIterator.OfInt {
+        private int i = hasZeroKey ? -1 : 0; //index of the next slot to test, -1 for the key 0
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            if (i < 0) return true;
+            while (i < capacity && keys[i] == 0) i++;
+            return i < capacity;
+        }
+
+        public int nextInt() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return (i++ < 0) ? 0 : keys[i - 1];
+        }
+    }
+}
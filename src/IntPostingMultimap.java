@@ -0,0 +1,430 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A multimap from keys to sets of non-negative int values, meant for inverted indexes (term to
+ * document ids). The values of a key form a posting list: they are kept sorted and split into
+ * blocks of up to BLOCK_SIZE values. The first value of every block is stored as a plain int, and
+ * each following value as its difference from the previous one in variable-byte form (7 bits per
+ * byte, the high bit marks a following byte), so a dense list of ids costs about one byte per id.
+ *
+ * The first values of the blocks double as skip pointers: intersect() and union() move two
+ * cursors forward with a binary search over the first values and decode only the blocks that may
+ * contain a match. Appending a value greater than all values of its key writes its difference at
+ * the end of the last block; inserting or removing a value elsewhere decodes and re-encodes one block.
+ * The keys are kept in a java.util.HashMap, like in HashMultimap.
+ * @param <K> key of an entry
+ */
+public class IntPostingMultimap<K> {
+    private static final int BLOCK_SIZE = 128; //maximum number of values in a block
+    private final HashMap<K, PostingList> map = new HashMap<>();
+    private int total = 0; //number of key-value pairs
+
+    /*--------------Nested PostingList class ------------------*/
+
+    /**
+     * The sorted values of a key as a sequence of variable-byte encoded blocks.
+     */
+    private static class PostingList {
+        private int blockCount = 0;
+        private int[] firsts = new int[1]; //first value of each block, the skip pointers
+        private int[] sizes = new int[1]; //number of values in each block
+        private byte[][] blocks = new byte[1][]; //encoded differences of the other values of each block
+        private int[] lengths = new int[1]; //number of used bytes of each block
+        private int size = 0; //number of values
+        private int last = -1; //greatest value
+
+        /**
+         * Gives the block that may hold the given value: the last block whose first value is less
+         * than or equal to it, searching from block from on, or from if there is no such block.
+         * @param value int value to search
+         * @param from int index of the first block to consider
+         * @return int index of the block
+         */
+        private int findBlock(int value, int from) {
+            int low = from, high = blockCount - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (firsts[mid] <= value) low = mid;
+                else high = mid - 1;
+            }
+            return low;
+        }
+
+        /**
+         * Decodes the values of block b into the given buffer.
+         * @param b int index of the block
+         * @param buf int array of at least BLOCK_SIZE + 1 elements
+         * @return int number of values decoded
+         */
+        private int decode(int b, int[] buf) {
+            byte[] data = blocks[b];
+            int value = firsts[b];
+            buf[0] = value;
+            int pos = 0;
+            for (int j = 1; j < sizes[b]; j++) {
+                int delta = 0, shift = 0, x;
+                do {
+                    x = data[pos++];
+                    delta |= (x & 0x7F) << shift;
+                    shift += 7;
+                } while (x < 0);
+                value += delta;
+                buf[j] = value;
+            }
+            return sizes[b];
+        }
+
+        /**
+         * Appends the variable-byte form of delta to block b, growing its byte array if needed.
+         * @param b int index of the block
+         * @param delta int non-negative difference
+         */
+        private void writeDelta(int b, int delta) {
+            if (lengths[b] + 5 > blocks[b].length)
+                blocks[b] = Arrays.copyOf(blocks[b], Math.max(8, 2 * blocks[b].length));
+            while (delta >= 0x80) {
+                blocks[b][lengths[b]++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            blocks[b][lengths[b]++] = (byte) delta;
+        }
+
+        /**
+         * Replaces the content of block b by the given sorted values.
+         * @param b int index of the block
+         * @param buf int array of the values
+         * @param from int index of the first value in buf
+         * @param count int number of values, at least 1
+         */
+        private void encode(int b, int[] buf, int from, int count) {
+            firsts[b] = buf[from];
+            sizes[b] = count;
+            blocks[b] = new byte[Math.max(8, count + count / 2)];
+            lengths[b] = 0;
+            for (int j = from + 1; j < from + count; j++)
+                writeDelta(b, buf[j] - buf[j - 1]);
+            blocks[b] = Arrays.copyOf(blocks[b], lengths[b]); //trim the block, it is rewritten as a whole
+        }
+
+        /**
+         * Opens an empty block at index b, shifting the following blocks.
+         * @param b int index of the new block
+         */
+        private void insertBlock(int b) {
+            if (blockCount == firsts.length) {
+                int cap = 2 * firsts.length;
+                firsts = Arrays.copyOf(firsts, cap);
+                sizes = Arrays.copyOf(sizes, cap);
+                blocks = Arrays.copyOf(blocks, cap);
+                lengths = Arrays.copyOf(lengths, cap);
+            }
+            int moved = blockCount - b;
+            System.arraycopy(firsts, b, firsts, b + 1, moved);
+            System.arraycopy(sizes, b, sizes, b + 1, moved);
+            System.arraycopy(blocks, b, blocks, b + 1, moved);
+            System.arraycopy(lengths, b, lengths, b + 1, moved);
+            blockCount++;
+        }
+
+        /**
+         * Deletes block b, shifting the following blocks.
+         * @param b int index of the block
+         */
+        private void deleteBlock(int b) {
+            int moved = blockCount - b - 1;
+            System.arraycopy(firsts, b + 1, firsts, b, moved);
+            System.arraycopy(sizes, b + 1, sizes, b, moved);
+            System.arraycopy(blocks, b + 1, blocks, b, moved);
+            System.arraycopy(lengths, b + 1, lengths, b, moved);
+            blockCount--;
+            blocks[blockCount] = null;
+        }
+
+        /**
+         * Adds a value to the list.
+         * @param value int non-negative value
+         * @return true if the value was not in the list
+         */
+        public boolean add(int value) {
+            if (value > last) {
+                int b = blockCount - 1;
+                if (b < 0 || sizes[b] == BLOCK_SIZE) {
+                    insertBlock(++b);
+                    firsts[b] = value;
+                    sizes[b] = 1;
+                    blocks[b] = new byte[8];
+                    lengths[b] = 0;
+                } else {
+                    writeDelta(b, value - last);
+                    sizes[b]++;
+                }
+                last = value;
+                size++;
+                return true;
+            }
+            int b = findBlock(value, 0);
+            int[] buf = new int[BLOCK_SIZE + 1];
+            int count = decode(b, buf);
+            int i = Arrays.binarySearch(buf, 0, count, value);
+            if (i >= 0) return false;
+            i = -(i + 1);
+            System.arraycopy(buf, i, buf, i + 1, count - i);
+            buf[i] = value;
+            count++;
+            if (count > BLOCK_SIZE) {                  //split the block into two halves
+                insertBlock(b + 1);
+                encode(b + 1, buf, count / 2, count - count / 2);
+                count /= 2;
+            }
+            encode(b, buf, 0, count);
+            size++;
+            return true;
+        }
+
+        /**
+         * Removes a value from the list.
+         * @param value int value
+         * @return true if the value was in the list
+         */
+        public boolean remove(int value) {
+            if (value < 0 || value > last) return false;
+            int b = findBlock(value, 0);
+            int[] buf = new int[BLOCK_SIZE + 1];
+            int count = decode(b, buf);
+            int i = Arrays.binarySearch(buf, 0, count, value);
+            if (i < 0) return false;
+            System.arraycopy(buf, i + 1, buf, i, count - i - 1);
+            count--;
+            if (count == 0)
+                deleteBlock(b);
+            else
+                encode(b, buf, 0, count);
+            size--;
+            if (value == last)
+                last = (blockCount == 0) ? -1 : buf[decode(blockCount - 1, buf) - 1];
+            return true;
+        }
+
+        public boolean contains(int value) {
+            if (value < 0 || value > last) return false;
+            int[] buf = new int[BLOCK_SIZE + 1];
+            return Arrays.binarySearch(buf, 0, decode(findBlock(value, 0), buf), value) >= 0;
+        }
+
+        /**
+         * @return int array of all values, in increasing order
+         */
+        public int[] toArray() {
+            int[] result = new int[size];
+            int[] buf = new int[BLOCK_SIZE + 1];
+            int k = 0;
+            for (int b = 0; b < blockCount; b++) {
+                int count = decode(b, buf);
+                System.arraycopy(buf, 0, result, k, count);
+                k += count;
+            }
+            return result;
+        }
+
+        /**
+         * @return long number of bytes of the blocks and the skip arrays
+         */
+        public long compressedBytes() {
+            long bytes = 8L * blockCount; //first value and size of each block
+            for (int b = 0; b < blockCount; b++)
+                bytes += lengths[b];
+            return bytes;
+        }
+    } /*-------------------End of nested PostingList class ---------------*/
+
+    /**
+     * A position in a posting list that decodes one block at a time.
+     */
+    private static class Cursor {
+        private final PostingList list;
+        private final int[] buf = new int[BLOCK_SIZE + 1]; //values of the current block
+        private int block = -1; //index of the current block
+        private int count = 0; //number of values in the current block
+        private int pos = 0; //index of the current value in buf
+
+        public Cursor(PostingList list) {this.list = list; }
+
+        /**
+         * Moves to the least value greater than or equal to target. Never moves backwards.
+         * Skips the blocks whose successors start at or before target without decoding them.
+         * @param target int value to reach
+         * @return int the value reached, or -1 if the list has no such value
+         */
+        public int advance(int target) {
+            while (true) {
+                if (pos < count && buf[count - 1] >= target) {
+                    while (buf[pos] < target) pos++;
+                    return buf[pos];
+                }
+                if (block + 1 >= list.blockCount) {
+                    pos = count;
+                    return -1;
+                }
+                block = list.findBlock(target, block + 1);
+                count = list.decode(block, buf);
+                pos = 0;
+            }
+        }
+    }
+
+    public IntPostingMultimap() {}
+
+    public int size() {return total; }
+
+    public boolean isEmpty() {return total == 0; }
+
+    /**
+     * @return int the number of distinct keys
+     */
+    public int keyCount() {return map.size(); }
+
+    /**
+     * inserts the key-value pair unless it is already in the multimap.
+     * @param key key of the entry to be inserted
+     * @param value int non-negative value of the entry to be inserted
+     * @return true if the pair was inserted
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public boolean put(K key, int value) throws IllegalArgumentException {
+        if (value < 0) throw new IllegalArgumentException("negative value");
+        PostingList list = map.get(key);
+        if (list == null) {
+            list = new PostingList();
+            map.put(key, list);
+        }
+        if (!list.add(value)) return false;
+        total++;
+        return true;
+    }
+
+    /**
+     * remove the given key-value pair from the map if there is a key-value pair matching the given.
+     * The key is removed with its last value.
+     * @param key key of the entry to be removed
+     * @param value int value to be removed.
+     * @return true if the pair was removed
+     */
+    public boolean remove(K key, int value) {
+        PostingList list = map.get(key);
+        if (list == null || !list.remove(value)) return false;
+        total--;
+        if (list.size == 0)
+            map.remove(key);
+        return true;
+    }
+
+    /**
+     * @param key key of the entry
+     * @param value int value of the entry
+     * @return true if the pair is in the multimap
+     */
+    public boolean containsEntry(K key, int value) {
+        PostingList list = map.get(key);
+        return list != null && list.contains(value);
+    }
+
+    /**
+     * @param key key of the entries
+     * @return int the number of values of the key
+     */
+    public int count(K key) {
+        PostingList list = map.get(key);
+        return (list == null) ? 0 : list.size;
+    }
+
+    /**
+     * Returns the values of the given key in increasing order.
+     * @param key key of the entry to search
+     * @return int array of the values, empty if there is no such key
+     */
+    public int[] get(K key) {
+        PostingList list = map.get(key);
+        return (list == null) ? new int[0] : list.toArray();
+    }
+
+    /**
+     * Removes the all entries with the given key.
+     * @param key key of the entries to be removed.
+     * @return int array of the removed values, in increasing order
+     */
+    public int[] removeAll(K key) {
+        PostingList list = map.remove(key);
+        if (list == null) return new int[0];
+        total -= list.size;
+        return list.toArray();
+    }
+
+    /**
+     * Returns the values that both keys have. The two posting lists are walked together, each
+     * cursor jumping over the blocks that end before the value of the other one.
+     * @param key1 first key
+     * @param key2 second key
+     * @return int array of the common values, in increasing order
+     */
+    public int[] intersect(K key1, K key2) {
+        PostingList a = map.get(key1), b = map.get(key2);
+        if (a == null || b == null) return new int[0];
+        int[] result = new int[Math.min(a.size, b.size)];
+        int k = 0;
+        Cursor ca = new Cursor(a), cb = new Cursor(b);
+        int x = ca.advance(0);
+        while (x >= 0) {
+            int y = cb.advance(x);
+            if (y < 0) break;
+            if (y == x) {
+                result[k++] = x;
+                x = (x == Integer.MAX_VALUE) ? -1 : ca.advance(x + 1);
+            } else
+                x = ca.advance(y);
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /**
+     * Returns the values that either key has.
+     * @param key1 first key
+     * @param key2 second key
+     * @return int array of the values of both keys without repetition, in increasing order
+     */
+    public int[] union(K key1, K key2) {
+        int[] a = get(key1), b = get(key2);
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) result[k++] = a[i++];
+            else if (a[i] > b[j]) result[k++] = b[j++];
+            else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) result[k++] = a[i++];
+        while (j < b.length) result[k++] = b[j++];
+        return Arrays.copyOf(result, k);
+    }
+
+    /**
+     * @return long the number of bytes of the encoded blocks and the skip arrays of all keys,
+     * not counting the keys and the object headers
+     */
+    public long compressedBytes() {
+        long bytes = 0;
+        for (PostingList list : map.values())
+            bytes += list.compressedBytes();
+        return bytes;
+    }
+
+    /**
+     * @return double the size of all values as plain 4-byte ints divided by compressedBytes()
+     */
+    public double compressionRatio() {
+        long bytes = compressedBytes();
+        return (bytes == 0) ? 1 : 4.0 * total / bytes;
+    }
+}
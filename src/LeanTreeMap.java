@@ -0,0 +1,578 @@
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An implementation of a sorted map using a red-black tree whose missing children are null
+ * references rather than sentinel leaves. Each node is itself the entry of the map, with its
+ * children, parent and color, so a map of n entries allocates n objects instead of the 2n+1 nodes
+ * and n entries of TreeMap. A null child counts as a black leaf.
+ *
+ * The tree is balanced as in RBTreeMap, so get, put and remove take O(log n) time for any order
+ * of the keys. A removal moves nodes instead of copying entries between them, so the entries
+ * returned by the map keep their keys. The iterators walk from a node to its successor lazily
+ * and fail fast if the map is structurally modified. Every node also counts the entries of its
+ * subtree, which answers rank, select, countRange and percentile in O(log n) time.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class LeanTreeMap<K, V> extends AbstractSortedMap<K, V> {
+    private static final boolean RED = true, BLACK = false;
+
+    /*--------------Nested Node class ------------------*/
+
+    /**
+     * An entry of the map that is also a node of the tree.
+     * @param <K> key element
+     * @param <V> value element
+     */
+    private static class Node<K, V> extends MapEntry<K, V> {
+        private Node<K, V> left, right, parent;
+        private boolean color = BLACK;
+        private int count = 1; //number of entries in the subtree of the node
+
+        public Node(K key, V value, Node<K, V> parent) {
+            super(key, value);
+            this.parent = parent;
+        }
+    } /*-------------------End of nested Node class ---------------*/
+
+    private Node<K, V> root = null;
+    private int n = 0; //number of entries
+    private int modCount = 0; //number of structural modifications, used by fail-fast iterators
+
+    /*Constructors*/
+    public LeanTreeMap() {super(); }
+    public LeanTreeMap(Comparator<K> comp) {super(comp); }
+
+    /**
+     * @return int the count of entries in the map
+     */
+    public int size() {return n; }
+
+    /**
+     * Returns the node with the given key, or null.
+     * @param key a target key
+     * @return Node holding key, or null
+     */
+    private Node<K, V> find(K key) {
+        Node<K, V> walk = root;
+        while (walk != null) {
+            int comp = compare(key, walk);
+            if (comp == 0) return walk;
+            walk = (comp < 0) ? walk.left : walk.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value associated with the specified key, or null if no such entry exists.
+     * @param key the key whose associated value is to be returned
+     * @return the associated value, or null if no such entry exists
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public V get(K key) throws IllegalArgumentException {
+        checkKey(key);
+        Node<K, V> p = find(key);
+        return (p == null) ? null : p.getValue();
+    }
+
+    /**
+     * Associates the given value with the given key, replacing the value of an existing entry.
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key (or null, if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public V put(K key, V value) throws IllegalArgumentException {
+        checkKey(key);
+        Node<K, V> parent = null;
+        Node<K, V> walk = root;
+        int comp = 0;
+        while (walk != null) {
+            comp = compare(key, walk);
+            if (comp == 0) return walk.setValue(value);
+            parent = walk;
+            walk = (comp < 0) ? walk.left : walk.right;
+        }
+        Node<K, V> node = new Node<>(key, value, parent);
+        if (parent == null)
+            root = node;
+        else if (comp < 0)
+            parent.left = node;
+        else
+            parent.right = node;
+        for (walk = parent; walk != null; walk = walk.parent)
+            walk.count++;
+        n++;
+        modCount++;
+        fixAfterInsertion(node);
+        return null;
+    }
+
+    /**
+     * Removes the entry with the specified key, if present, and returns its value.
+     * @param key the key whose entry is to be removed from the map
+     * @return the previous value associated with the removed key, or null if no such entry exists
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public V remove(K key) throws IllegalArgumentException {
+        checkKey(key);
+        Node<K, V> p = find(key);
+        if (p == null) return null;
+        V old = p.getValue();
+        deleteNode(p);
+        return old;
+    }
+
+    /*Null-safe accessors, a null node is a black leaf*/
+    private static <K, V> boolean colorOf(Node<K, V> p) {return (p == null) ? BLACK : p.color; }
+    private static <K, V> Node<K, V> parentOf(Node<K, V> p) {return (p == null) ? null : p.parent; }
+    private static <K, V> Node<K, V> leftOf(Node<K, V> p) {return (p == null) ? null : p.left; }
+    private static <K, V> Node<K, V> rightOf(Node<K, V> p) {return (p == null) ? null : p.right; }
+    private static <K, V> void setColor(Node<K, V> p, boolean c) {if (p != null) p.color = c; }
+    private static <K, V> int countOf(Node<K, V> p) {return (p == null) ? 0 : p.count; }
+
+    /**
+     * Recomputes the count of p from the counts of its children.
+     */
+    private static <K, V> void recount(Node<K, V> p) {p.count = 1 + countOf(p.left) + countOf(p.right); }
+
+    /**
+     * Replaces the child old of parent (or the root if parent is null) with child.
+     */
+    private void replaceChild(Node<K, V> parent, Node<K, V> old, Node<K, V> child) {
+        if (parent == null)
+            root = child;
+        else if (parent.left == old)
+            parent.left = child;
+        else
+            parent.right = child;
+    }
+
+    /**
+     * Rotates the right child of p above p.
+     */
+    private void rotateLeft(Node<K, V> p) {
+        Node<K, V> r = p.right;
+        p.right = r.left;
+        if (r.left != null) r.left.parent = p;
+        r.parent = p.parent;
+        replaceChild(p.parent, p, r);
+        r.left = p;
+        p.parent = r;
+        recount(p);
+        recount(r);
+    }
+
+    /**
+     * Rotates the left child of p above p.
+     */
+    private void rotateRight(Node<K, V> p) {
+        Node<K, V> l = p.left;
+        p.left = l.right;
+        if (l.right != null) l.right.parent = p;
+        l.parent = p.parent;
+        replaceChild(p.parent, p, l);
+        l.right = p;
+        p.parent = l;
+        recount(p);
+        recount(l);
+    }
+
+    /**
+     * Colors the new node x red and removes a double red by recoloring up the tree, or by at most
+     * two rotations when the uncle is black.
+     * @param x the node which was recently inserted
+     */
+    private void fixAfterInsertion(Node<K, V> x) {
+        x.color = RED;
+        while (x != root && colorOf(parentOf(x)) == RED) {
+            Node<K, V> parent = parentOf(x), grand = parentOf(parent);
+            boolean parentIsLeft = parent == leftOf(grand);
+            Node<K, V> uncle = parentIsLeft ? rightOf(grand) : leftOf(grand);
+            if (colorOf(uncle) == RED) {
+                setColor(parent, BLACK);
+                setColor(uncle, BLACK);
+                setColor(grand, RED);
+                x = grand;
+            } else {
+                if (parentIsLeft && x == parent.right) {
+                    x = parent;
+                    rotateLeft(x);
+                } else if (!parentIsLeft && x == parent.left) {
+                    x = parent;
+                    rotateRight(x);
+                }
+                setColor(parentOf(x), BLACK);
+                setColor(grand, RED);
+                if (parentIsLeft) rotateRight(grand);
+                else rotateLeft(grand);
+            }
+        }
+        root.color = BLACK;
+    }
+
+    /**
+     * Unlinks the node p from the tree. A node with two children first trades places (and colors)
+     * with its successor, so that the node to unlink has at most one child. The ancestors of p
+     * lose an entry before the tree is rebalanced, and a leaf p counts no entry while it stands
+     * in for the black leaf.
+     * @param p a node of the tree
+     */
+    private void deleteNode(Node<K, V> p) {
+        n--;
+        modCount++;
+        if (p.left != null && p.right != null)
+            swapWithSuccessor(p);
+        for (Node<K, V> walk = p.parent; walk != null; walk = walk.parent)
+            walk.count--;
+        p.count = 0;
+        Node<K, V> child = (p.left != null) ? p.left : p.right;
+        if (child != null) {
+            child.parent = p.parent;
+            replaceChild(p.parent, p, child);
+            p.left = p.right = p.parent = null;
+            if (p.color == BLACK) fixAfterDeletion(child);
+        } else if (p.parent == null)
+            root = null;
+        else {
+            if (p.color == BLACK) fixAfterDeletion(p); //p acts as the black leaf until unlinked
+            replaceChild(p.parent, p, null);
+            p.parent = null;
+        }
+    }
+
+    /**
+     * Exchanges the positions, colors and subtree counts of the node p, which has two children,
+     * and its successor.
+     * @param p a node with two children
+     */
+    private void swapWithSuccessor(Node<K, V> p) {
+        Node<K, V> s = p.right;
+        while (s.left != null) s = s.left;
+        boolean color = p.color;
+        p.color = s.color;
+        s.color = color;
+        int count = p.count;
+        p.count = s.count;
+        s.count = count;
+        Node<K, V> sParent = s.parent, sRight = s.right;
+        replaceChild(p.parent, p, s);
+        s.parent = p.parent;
+        s.left = p.left;
+        s.left.parent = s;
+        if (sParent == p) {
+            s.right = p;
+            p.parent = s;
+        } else {
+            s.right = p.right;
+            s.right.parent = s;
+            sParent.left = p;
+            p.parent = sParent;
+        }
+        p.left = null;
+        p.right = sRight;
+        if (sRight != null) sRight.parent = p;
+    }
+
+    /**
+     * Removes the black deficit at x, which replaced a removed black node, by recoloring up the
+     * tree or by at most three rotations.
+     * @param x the node with a black deficit
+     */
+    private void fixAfterDeletion(Node<K, V> x) {
+        while (x != root && colorOf(x) == BLACK) {
+            Node<K, V> parent = parentOf(x);
+            boolean isLeft = x == leftOf(parent);
+            Node<K, V> sib = isLeft ? rightOf(parent) : leftOf(parent);
+            if (colorOf(sib) == RED) {                  //red sibling: rotate, then one of the cases below
+                setColor(sib, BLACK);
+                setColor(parent, RED);
+                if (isLeft) rotateLeft(parent);
+                else rotateRight(parent);
+                sib = isLeft ? rightOf(parent) : leftOf(parent);
+            }
+            Node<K, V> near = isLeft ? leftOf(sib) : rightOf(sib);
+            Node<K, V> far = isLeft ? rightOf(sib) : leftOf(sib);
+            if (colorOf(near) == BLACK && colorOf(far) == BLACK) {  //black nephews: recolor
+                setColor(sib, RED);
+                x = parent;
+            } else {                                    //a red nephew: restructure
+                if (colorOf(far) == BLACK) {
+                    setColor(near, BLACK);
+                    setColor(sib, RED);
+                    if (isLeft) rotateRight(sib);
+                    else rotateLeft(sib);
+                    sib = isLeft ? rightOf(parent) : leftOf(parent);
+                }
+                setColor(sib, colorOf(parent));
+                setColor(parent, BLACK);
+                setColor(isLeft ? rightOf(sib) : leftOf(sib), BLACK);
+                if (isLeft) rotateLeft(parent);
+                else rotateRight(parent);
+                x = root;
+            }
+        }
+        setColor(x, BLACK);
+    }
+
+    /**
+     * @return the node following p in the order of the keys, or null
+     */
+    private static <K, V> Node<K, V> successor(Node<K, V> p) {
+        if (p.right != null) {
+            p = p.right;
+            while (p.left != null) p = p.left;
+            return p;
+        }
+        while (p.parent != null && p == p.parent.right) p = p.parent;
+        return p.parent;
+    }
+
+    /**
+     * Returns the node with the least key greater than (or equal to, if inclusive) the given key.
+     * @param key a target key
+     * @param inclusive true to accept the key itself
+     * @return Node or null if no such key exists
+     */
+    private Node<K, V> higherNode(K key, boolean inclusive) {
+        Node<K, V> walk = root, best = null;
+        while (walk != null) {
+            int comp = compare(key, walk);
+            if (comp == 0 && inclusive) return walk;
+            if (comp < 0) {
+                best = walk;
+                walk = walk.left;
+            } else
+                walk = walk.right;
+        }
+        return best;
+    }
+
+    /**
+     * Returns the node with the greatest key less than (or equal to, if inclusive) the given key.
+     * @param key a target key
+     * @param inclusive true to accept the key itself
+     * @return Node or null if no such key exists
+     */
+    private Node<K, V> lowerNode(K key, boolean inclusive) {
+        Node<K, V> walk = root, best = null;
+        while (walk != null) {
+            int comp = compare(key, walk);
+            if (comp == 0 && inclusive) return walk;
+            if (comp > 0) {
+                best = walk;
+                walk = walk.right;
+            } else
+                walk = walk.left;
+        }
+        return best;
+    }
+
+    /**
+     * @return the node with the least key, or null if the map is empty
+     */
+    private Node<K, V> firstNode() {
+        Node<K, V> walk = root;
+        if (walk != null)
+            while (walk.left != null) walk = walk.left;
+        return walk;
+    }
+
+    // additional behaviors of the SortedMap interface
+    /**
+     * Returns the entry having the least key (or null if map is empty).
+     * @return entry with least key (or null if map is empty)
+     */
+    public Entry<K, V> firstEntry() {return firstNode(); }
+
+    /**
+     * Returns the entry having the greatest key (or null if map is empty).
+     * @return entry with greatest key (or null if map is empty)
+     */
+    public Entry<K, V> lastEntry() {
+        Node<K, V> walk = root;
+        if (walk != null)
+            while (walk.right != null) walk = walk.right;
+        return walk;
+    }
+
+    /**
+     * Returns the entry with least key greater than or equal to given key
+     * (or null if no such key exists).
+     * @return entry with least key greater than or equal to given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> ceilingEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return higherNode(key, true);
+    }
+
+    /**
+     * Returns the entry with greatest key less than or equal to given key
+     * (or null if no such key exists).
+     * @return entry with greatest key less than or equal to given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> floorEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return lowerNode(key, true);
+    }
+
+    /**
+     * Returns the entry with greatest key strictly less than given key
+     * (or null if no such key exists).
+     * @return entry with greatest key strictly less than given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> lowerEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return lowerNode(key, false);
+    }
+
+    /**
+     * Returns the entry with least key strictly greater than given key
+     * (or null if no such key exists).
+     * @return entry with least key strictly greater than given (or null if no such entry)
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public Entry<K, V> higherEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return higherNode(key, false);
+    }
+
+    // order statistics, answered from the subtree counts
+    /**
+     * Returns the number of entries with keys strictly less than the given key, which is also
+     * the index the key has (or would have) in the order of the keys. Takes O(log n) time.
+     * @param key a target key
+     * @return int number of entries with lesser keys
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public int rank(K key) throws IllegalArgumentException {
+        checkKey(key);
+        int rank = 0;
+        Node<K, V> walk = root;
+        while (walk != null) {
+            int comp = compare(key, walk);
+            if (comp == 0) return rank + countOf(walk.left);
+            if (comp < 0)
+                walk = walk.left;
+            else {
+                rank += countOf(walk.left) + 1; //the left subtree and walk are lesser
+                walk = walk.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the entry with the given index in the order of the keys, 0 for the least key.
+     * Takes O(log n) time.
+     * @param index int index of the entry
+     * @return entry with the given index
+     * @throws IllegalArgumentException if the index is not in the range 0 to size()-1
+     */
+    public Entry<K, V> select(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= n)
+            throw new IllegalArgumentException("index out of range: " + index);
+        Node<K, V> walk = root;
+        while (true) {
+            int left = countOf(walk.left);
+            if (index == left) return walk;
+            if (index < left)
+                walk = walk.left;
+            else {
+                index -= left + 1;
+                walk = walk.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries with keys in the range from <code>fromKey</code>
+     * inclusive to <code>toKey</code> exclusive, without visiting them.
+     * @return int number of entries in the range
+     * @throws IllegalArgumentException if <code>fromKey</code> or <code>toKey</code> is not compatible with the map
+     */
+    public int countRange(K fromKey, K toKey) throws IllegalArgumentException {
+        return Math.max(0, rank(toKey) - rank(fromKey));
+    }
+
+    /**
+     * Returns the entry at the given quantile of the keys by the nearest-rank method: the least
+     * key such that a fraction q of the entries have keys less than or equal to it.
+     * @param q double fraction of the entries, 0 &lt;= q &lt;= 1
+     * @return entry at the quantile (or null if map is empty)
+     * @throws IllegalArgumentException if q is not in the range 0 to 1
+     */
+    public Entry<K, V> percentile(double q) throws IllegalArgumentException {
+        if (!(q >= 0 && q <= 1))
+            throw new IllegalArgumentException("q must be between 0 and 1");
+        if (n == 0) return null;
+        return select(Math.max(0, (int) Math.ceil(q * n) - 1));
+    }
+
+    /**
+     * Supporting classes for a lazy iterator that walks from a node to its successor until the
+     * end of the map or the first key that is not less than the bound.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private Node<K, V> next;
+        private final K toKey; //bound of the range, null for the end of the map
+        private final int expectedModCount = modCount;
+
+        public EntryIterator(Node<K, V> first, K toKey) {
+            next = first;
+            this.toKey = toKey;
+        }
+
+        public boolean hasNext() {return next != null && (toKey == null || compare(next, toKey) < 0); }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            Node<K, V> answer = next;
+            next = successor(next);
+            return answer;
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        private final K fromKey, toKey; //range of the keys, null for the whole map
+
+        public EntryIterable(K fromKey, K toKey) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+        }
+
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator((fromKey == null) ? firstNode() : higherNode(fromKey, true), toKey);
+        }
+    }
+
+    /**
+     * Returns an iterable collection of all key-value entries of the map, in the order of the keys.
+     * @return iterable collection of the map's entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(null, null); }
+
+    /**
+     * Returns an iterable containing all entries with keys in the range from
+     * <code>fromKey</code> inclusive to <code>toKey</code> exclusive.
+     * @return iterable with keys in desired range
+     * @throws IllegalArgumentException if <code>fromKey</code> or <code>toKey</code> is not compatible with the map
+     */
+    public Iterable<Entry<K, V>> subMap(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        return new EntryIterable(fromKey, toKey);
+    }
+}
@@ -0,0 +1,495 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A non-blocking hash map using linear probing on the layout of ProbeHashMap, for tables that are
+ * read and written by many threads. Every slot of the table is a key cell and a value cell of a
+ * single Object array, and all changes of a cell are compare-and-set operations through a VarHandle,
+ * so no thread ever waits for a lock.
+ *
+ * A key cell is claimed once (from null to the key) and never changes afterwards, so a probe
+ * sequence stays valid for the lifetime of the table. Removing an entry sets its value cell to a
+ * TOMBSTONE instead of freeing the slot; a later put of the same key revives the slot, and the
+ * tombstones are dropped when the table is copied into a new one.
+ *
+ * When the claimed slots exceed half of the table, a new table is attached to the old one and the
+ * slots are copied cooperatively: every writer that meets a table being copied copies a chunk of it.
+ * Copying a slot first freezes its value cell (wrapping the value in a Frozen box, which makes later
+ * writes to the old slot fail) or seals an empty key cell, then puts the frozen value into the new
+ * table only if the key has no value there yet. A writer of a key always finishes the copy of the
+ * old slot of the key before writing in the new table, so a copied value never overwrites a newer one.
+ * The new table replaces the old one once all slots are copied.
+ *
+ * compute and its relatives apply their function to the value read from the value cell and store
+ * the result with a compare-and-set of that cell, so under contention the function may be applied
+ * more than once, but only a result computed from the current value is ever stored.
+ *
+ * Iterators are weakly consistent and return snapshots of the entries.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class LockFreeProbeHashMap<K, V> extends AbstractMap<K, V> {
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final Object TOMBSTONE = new Object(); //value of a removed entry
+    private static final Object SEALED = new Object(); //key of an empty slot closed by a copy
+    private static final int COPY_CHUNK = 64; //slots copied by a helping writer at a time
+
+    /**
+     * The box of a value cell that has been frozen by a copy.
+     */
+    private static final class Frozen {
+        private final Object value;
+
+        private Frozen(Object value) {this.value = value; }
+    }
+
+    /**
+     * A table of slots together with the state of its copy into the next table.
+     */
+    private static final class Table {
+        private final Object[] cells; //key of slot i at 2i, value of slot i at 2i+1
+        private final int length; //number of slots, a power of two
+        private final AtomicInteger claimed = new AtomicInteger(); //number of claimed key cells
+        private final AtomicReference<Table> next = new AtomicReference<>(); //table being copied into
+        private final AtomicInteger copyIndex = new AtomicInteger(); //first slot not handed to a copier
+        private final AtomicInteger copied = new AtomicInteger(); //number of slots copied
+
+        private Table(int length) {
+            this.length = length;
+            cells = new Object[2 * length];
+        }
+
+        private Object key(int i) {return CELLS.getVolatile(cells, 2 * i); }
+        private Object value(int i) {return CELLS.getVolatile(cells, 2 * i + 1); }
+        private boolean casKey(int i, Object expected, Object key) {
+            return CELLS.compareAndSet(cells, 2 * i, expected, key);
+        }
+        private boolean casValue(int i, Object expected, Object value) {
+            return CELLS.compareAndSet(cells, 2 * i + 1, expected, value);
+        }
+        private boolean copyDone() {return copied.get() == length; }
+    }
+
+    private final AtomicReference<Table> top; //the table that new operations start with
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Default constructor creates an empty map with a table of 16 slots.
+     */
+    public LockFreeProbeHashMap() {this(16); }
+
+    /**
+     * The constructor creates an empty map whose table length is the least power of two greater
+     * than or equal to the given length.
+     * @param cap int length of the table
+     */
+    public LockFreeProbeHashMap(int cap) {
+        int length = 2;
+        while (length < cap) length <<= 1;
+        top = new AtomicReference<>(new Table(length));
+    }
+
+    /**
+     * Mixes the high bits of hashCode() into the low bits that select the home slot.
+     * @param key key
+     * @return int hash code
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Tests if a raw value cell content stands for a present entry.
+     * @param v content of a value cell, not frozen
+     * @return true if v is a value of the map
+     */
+    private static boolean isLive(Object v) {return v != null && v != TOMBSTONE; }
+
+    /**
+     * Gives the count of entries in the map. While other threads modify the map
+     * the result is an estimate.
+     * @return int the count of entries
+     */
+    public int size() {return (int) size.sum(); }
+
+    /**
+     * Gives the value of the entry with the given key without writing to the map.
+     * @param key element of the entry
+     * @return V value of the entry or null if there is no such entry
+     */
+    public V get(K key) {
+        Object v = find(top.get(), hash(key), key);
+        return isLive(v) ? (V) v : null;
+    }
+
+    /**
+     * Looks up the raw value of a key in the given table and the tables it is being copied into.
+     * A value frozen in an old table is current unless the key already has a value in the next table.
+     * @param t table to start with
+     * @param h int hash code of the key
+     * @param key key
+     * @return the value, TOMBSTONE, or null if the key has no value
+     */
+    private Object find(Table t, int h, Object key) {
+        while (t != null) {
+            int mask = t.length - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < t.length; probes++) {
+                Object k = t.key(i);
+                if (k == null) return null;
+                if (k == SEALED) break;
+                if (k == key || k.equals(key)) {
+                    Object v = t.value(i);
+                    if (!(v instanceof Frozen)) return v;
+                    Object newer = find(t.next.get(), h, key);
+                    return (newer != null) ? newer : ((Frozen) v).value;
+                }
+                i = (i + 1) & mask;
+            }
+            t = t.next.get();
+        }
+        return null;
+    }
+
+    /**
+     * Insert to or update the map with the given key-value pair.
+     * @param key key of the entry to be inserted (or updated if already exists)
+     * @param value value of the entry to be inserted (or updated if already exists), not null
+     * @return null if the operation result with insert, the old V value otherwise
+     * @throws IllegalArgumentException if the value is null
+     */
+    public V put(K key, V value) throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        Object old = write(hash(key), key, value, null);
+        return isLive(old) ? (V) old : null;
+    }
+
+    /**
+     * Remove the entry with the given key.
+     * @param key of the entry to be removed
+     * @return V value of the removed entry or null if there is no such entry
+     */
+    public V remove(K key) {
+        Object old = write(hash(key), key, TOMBSTONE, null);
+        return isLive(old) ? (V) old : null;
+    }
+
+    /**
+     * Computes a new value for the given key from the key and its current value (null if there is
+     * no entry with the key), and stores it only if the value has not changed since it was read,
+     * retrying otherwise. A null result removes the entry. The remapping function must not modify
+     * the map, and may be applied more than once.
+     * @param key key of the entry to be computed
+     * @param remappingFunction function of the key and the current value giving the new value
+     * @return the new value, or null if the map has no entry with the key afterwards
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Object[] value = new Object[1]; //result computed from the value that was replaced
+        write(hash(key), key, null, (k, old) -> value[0] = remappingFunction.apply(k, old));
+        return (V) value[0];
+    }
+
+    /**
+     * Stores the value computed from the key if there is no entry with the key, a null result stores
+     * nothing. The value is stored by a compare-and-set only if the key is still absent.
+     * @param key key of the entry
+     * @param mappingFunction function of the key giving the value
+     * @return the current (existing or computed) value, or null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V current = get(key);
+        if (current != null) return current;
+        return compute(key, (k, old) -> (old != null) ? old : mappingFunction.apply(k));
+    }
+
+    /**
+     * Stores the given value if there is no entry with the key, otherwise stores the value combined
+     * from the current one and the given one by a compare-and-set. A null result removes the entry.
+     * @param key key of the entry
+     * @param value value to be stored or combined, not null
+     * @param remappingFunction function of the current value and the given value giving the new value
+     * @return the new value, or null if the entry is removed
+     * @throws IllegalArgumentException if the value is null
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        return compute(key, (k, old) -> (old == null) ? value : remappingFunction.apply(old, value));
+    }
+
+    /**
+     * Stores the given value if there is no entry with the key. Only one of the threads putting the
+     * same absent key gets null back.
+     * @param key key of the entry
+     * @param value value to be stored, not null
+     * @return the current value of the key, or null if the value is stored
+     * @throws IllegalArgumentException if the value is null
+     */
+    public V putIfAbsent(K key, V value) throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        Object old = write(hash(key), key, null, (k, current) -> (current != null) ? current : value);
+        return isLive(old) ? (V) old : null;
+    }
+
+    /**
+     * Gives the raw value that replaces the raw value v of a key.
+     * @param f remapping function of the key and its current value, or null to store val
+     * @param key key
+     * @param val new value or TOMBSTONE, used when f is null
+     * @param v current raw value of the key
+     * @return val, or the result of f as a raw value (TOMBSTONE for null)
+     */
+    private Object remap(BiFunction<K, V, ?> f, Object key, Object val, Object v) {
+        if (f == null) return val;
+        Object result = f.apply((K) key, isLive(v) ? (V) v : null);
+        return (result != null) ? result : TOMBSTONE;
+    }
+
+    /**
+     * Sets the value cell of the given key, continuing in the next table whenever the slot of the
+     * key is being copied. Writing TOMBSTONE removes the entry and never claims a slot. With a
+     * remapping function, the new value is computed from the value read from the cell, and computed
+     * again whenever the compare-and-set finds another value.
+     * @param h int hash code of the key
+     * @param key key
+     * @param val new value or TOMBSTONE, used when f is null
+     * @param f remapping function of the key and its current value, or null
+     * @return the previous raw value of the key (null or TOMBSTONE if the key was absent)
+     */
+    private Object write(int h, Object key, Object val, BiFunction<K, V, ?> f) {
+        Table t = top.get();
+        Object from = SEALED, to = null; //last value given to remap and its result
+        outer:
+        while (true) {
+            if (t.next.get() != null) helpCopy(t);
+            int mask = t.length - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < t.length; ) {
+                Object k = t.key(i);
+                if (k == null) {
+                    if (from != null) {
+                        to = remap(f, key, val, null);
+                        from = null;
+                    }
+                    if (to == TOMBSTONE) return null;
+                    Table next = t.next.get();
+                    if (next != null) {
+                        if (t.casKey(i, null, SEALED)) {
+                            t = next;
+                            continue outer;
+                        }
+                        continue;             //lost the race for the cell, read it again
+                    }
+                    if (t.claimed.get() >= t.length / 2) {
+                        startCopy(t);
+                        continue outer;
+                    }
+                    if (!t.casKey(i, null, key)) continue;
+                    t.claimed.incrementAndGet();
+                    k = key;
+                }
+                if (k == SEALED) {
+                    t = t.next.get();
+                    continue outer;
+                }
+                if (k == key || k.equals(key)) {
+                    while (true) {
+                        Object v = t.value(i);
+                        if (v instanceof Frozen || t.next.get() != null) {
+                            copySlot(t, i);
+                            t = t.next.get();
+                            continue outer;
+                        }
+                        if (from != v) {
+                            to = remap(f, key, val, v);
+                            from = v;
+                        }
+                        if (to == v || (to == TOMBSTONE && !isLive(v))) return v;
+                        if (t.casValue(i, v, to)) {
+                            if (isLive(v) != isLive(to))
+                                size.add(isLive(to) ? 1 : -1);
+                            return v;
+                        }
+                    }
+                }
+                i = (i + 1) & mask;
+                probes++;
+            }
+            startCopy(t);                     //no free slot left for the key
+        }
+    }
+
+    /**
+     * Attaches a new table to t if it has none yet. The new table is twice as long unless most of
+     * the claimed slots of t are tombstones, in which case it has the same length.
+     * @param t a table that ran out of free slots
+     */
+    private void startCopy(Table t) {
+        if (t.next.get() != null) return;
+        int length = (size.sum() * 4 >= t.length) ? 2 * t.length : t.length;
+        t.next.compareAndSet(null, new Table(length));
+    }
+
+    /**
+     * Copies the next unclaimed chunk of slots of t into its next table, and replaces the top
+     * table once every slot is copied.
+     * @param t a table being copied
+     */
+    private void helpCopy(Table t) {
+        int start = t.copyIndex.getAndAdd(COPY_CHUNK);
+        if (start >= t.length) return;
+        int end = Math.min(start + COPY_CHUNK, t.length);
+        for (int i = start; i < end; i++)
+            copySlot(t, i);
+        if (t.copied.addAndGet(end - start) == t.length)
+            promote();
+    }
+
+    /**
+     * Replaces the top table by its next table as long as the top table is completely copied.
+     */
+    private void promote() {
+        Table t = top.get();
+        while (t.copyDone() && top.compareAndSet(t, t.next.get()))
+            t = top.get();
+    }
+
+    /**
+     * Copies slot i of t into the next table: seals an empty key cell, or freezes the value cell and
+     * puts a present value into the next table unless the key already has a value there. Copying a
+     * slot more than once has no further effect.
+     * @param t a table being copied
+     * @param i int index of the slot
+     */
+    private void copySlot(Table t, int i) {
+        Object k = t.key(i);
+        while (k == null) {
+            if (t.casKey(i, null, SEALED)) return;
+            k = t.key(i);
+        }
+        if (k == SEALED) return;
+        Object v;
+        while (true) {
+            v = t.value(i);
+            if (v instanceof Frozen) {
+                v = ((Frozen) v).value;
+                break;
+            }
+            if (t.casValue(i, v, new Frozen(v))) break;
+        }
+        if (isLive(v))
+            copyInto(t.next.get(), hash(k), k, v);
+    }
+
+    /**
+     * Puts a copied value into the given table (or the tables it is being copied into) only if the
+     * key has no value there yet.
+     * @param t the table to copy into
+     * @param h int hash code of the key
+     * @param key key
+     * @param val present value
+     */
+    private void copyInto(Table t, int h, Object key, Object val) {
+        outer:
+        while (true) {
+            int mask = t.length - 1;
+            int i = h & mask;
+            for (int probes = 0; probes < t.length; ) {
+                Object k = t.key(i);
+                if (k == null) {
+                    Table next = t.next.get();
+                    if (next != null) {
+                        if (t.casKey(i, null, SEALED)) {
+                            t = next;
+                            continue outer;
+                        }
+                        continue;
+                    }
+                    if (!t.casKey(i, null, key)) continue;
+                    t.claimed.incrementAndGet();
+                    k = key;
+                }
+                if (k == SEALED) {
+                    t = t.next.get();
+                    continue outer;
+                }
+                if (k == key || k.equals(key)) {
+                    Object v = t.value(i);
+                    if (v == null && t.casValue(i, null, val)) return;
+                    v = t.value(i);
+                    if (!(v instanceof Frozen) || ((Frozen) v).value != null)
+                        return;               //the key already has a value (or a tombstone) here
+                    copySlot(t, i);
+                    t = t.next.get();
+                    continue outer;
+                }
+                i = (i + 1) & mask;
+                probes++;
+            }
+            startCopy(t);
+            t = t.next.get();
+        }
+    }
+
+    /**
+     * Supporting classes for a weakly consistent iterator. If the top table is being copied, the
+     * iterator first copies all of its slots itself and starts from the newest table instead; the
+     * current value of a slot frozen by a later copy is looked up in the newer tables.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Table t;
+        private int i = 0; //index of the next slot to test
+        private Entry<K, V> next; //next entry to return
+
+        public EntryIterator() {
+            Table current = top.get();
+            while (current.next.get() != null) {
+                for (int j = 0; j < current.length; j++)
+                    copySlot(current, j);
+                current = current.next.get();
+            }
+            t = current;
+        }
+
+        public boolean hasNext() {
+            while (next == null && i < t.length) {
+                Object k = t.key(i);
+                Object v = t.value(i++);
+                if (k == null || k == SEALED) continue;
+                if (v instanceof Frozen) v = find(t, hash(k), k);
+                if (isLive(v)) next = new MapEntry<>((K) k, (V) v);
+            }
+            return next != null;
+        }
+
+        public Entry<K, V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry<K, V> answer = next;
+            next = null;
+            return answer;
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Return a weakly consistent iterable set of snapshot entries
+     * @return Iterable set of entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
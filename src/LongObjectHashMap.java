@@ -0,0 +1,172 @@
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A hash map from long keys to object values that stores the keys unboxed in an array parallel
+ * to the array of values. The key 0 marks an empty slot, so an entry with the key 0 is kept in
+ * separate fields. Missing keys are reported with null.
+ * @param <V> value element
+ */
+public class LongObjectHashMap<V> extends AbstractPrimitiveHashMap {
+    private long[] keys; //key of each slot, 0 for an empty slot
+    private V[] values; //value of each slot
+    private boolean hasZeroKey; //true if the map has an entry with the key 0
+    private V zeroValue; //value of the entry with the key 0
+
+    /*Constructors*/
+    public LongObjectHashMap() {this(16); }
+    public LongObjectHashMap(int cap) {super(cap); }
+
+    /**
+     * Create the arrays of the table
+     */
+    protected void createTable() {
+        keys = new long[capacity];
+        values = (V[]) new Object[capacity];
+    }
+
+    /**
+     * Moves the entries of the current arrays into new arrays of length capacity.
+     */
+    protected void rehash() {
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        createTable();
+        for (int j = 0; j < oldKeys.length; j++)
+            if (oldKeys[j] != 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+    }
+
+    /**
+     * Returns the index of the slot with the given non-zero key, or the index of the empty slot
+     * that ends its probe sequence encoded as -(index + 1).
+     * @param key long key
+     * @return int index of the key, or -(index + 1) of the empty slot
+     */
+    private int findSlot(long key) {
+        int i = hash(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * @param key long key
+     * @return the value associated with the key, or null if there is no such entry
+     */
+    public V get(long key) {
+        if (key == 0) return zeroValue;
+        int i = findSlot(key);
+        return (i < 0) ? null : values[i];
+    }
+
+    /**
+     * @param key long key
+     * @return true if the map has an entry with the key
+     */
+    public boolean containsKey(long key) {
+        if (key == 0) return hasZeroKey;
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Associates the value with the key.
+     * @param key long key
+     * @param value V value
+     * @return the old value of the key, or null if the key is new
+     */
+    public V put(long key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                n++;
+                modCount++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int i = findSlot(key);
+        if (i >= 0) {
+            V old = values[i];
+            values[i] = value;
+            return old;
+        }
+        i = -(i + 1);
+        keys[i] = key;
+        values[i] = value;
+        n++;
+        modCount++;
+        checkGrow();
+        return null;
+    }
+
+    /**
+     * Removes the entry with the given key, then shifts the following entries of the cluster back.
+     * @param key long key
+     * @return the value of the removed entry, or null if there is no such entry
+     */
+    public V remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) return null;
+            V removed = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            n--;
+            modCount++;
+            return removed;
+        }
+        int i = findSlot(key);
+        if (i < 0) return null;
+        V removed = values[i];
+        int j = (i + 1) & mask;
+        while (keys[j] != 0) {
+            if (canShift(i, hash(keys[j]) & mask, j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[i] = 0;
+        values[i] = null;
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Gives an iterator over the keys of the map that does not box them. The iterator fails fast
+     * if the map is structurally modified after it is created.
+     * @return iterator of the keys
+     */
+    public PrimitiveIterator.OfLong keyIterator() {return new KeyIterator(); }
+
+    /**
+     * Supporting class for the key iterator, walks the key array in place.
+     */
+    private class KeyIterator implements PrimitiveIterator.OfLong {
+        private int i = hasZeroKey ? -1 : 0; //index of the next slot to test, -1 for the key 0
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            if (i < 0) return true;
+            while (i < capacity && keys[i] == 0) i++;
+            return i < capacity;
+        }
+
+        public long nextLong() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return (i++ < 0) ? 0 : keys[i - 1];
+        }
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 /**
  * The implementation of a simplified Map interface rom the textbook
  * @param <K> key element
@@ -39,6 +42,64 @@ public interface Map<K, V> {
      */
     V remove(K key);
 
+    /**
+     * Computes a new value for the given key from the key and its current value (null if there is
+     * no entry with the key). A null result removes the entry, any other result is stored.
+     * This default version searches the map twice, with get and then put or remove; the maps that
+     * can find the position of a key once override it. The remapping function must not modify the map.
+     * @param key key of the entry to be computed
+     * @param remappingFunction function of the key and the current value giving the new value
+     * @return the new value, or null if the map has no entry with the key afterwards
+     */
+    default V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        V old = get(key);
+        V value = remappingFunction.apply(key, old);
+        if (value != null)
+            put(key, value);
+        else if (old != null)
+            remove(key);
+        return value;
+    }
+
+    /**
+     * Stores the value computed from the key if there is no entry with the key, a null result stores nothing.
+     * @param key key of the entry
+     * @param mappingFunction function of the key giving the value
+     * @return the current (existing or computed) value, or null
+     */
+    default V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return compute(key, (k, old) -> (old != null) ? old : mappingFunction.apply(k));
+    }
+
+    /**
+     * Stores the given value if there is no entry with the key, otherwise stores the value combined
+     * from the current one and the given one. A null result removes the entry.
+     * @param key key of the entry
+     * @param value value to be stored or combined, not null
+     * @param remappingFunction function of the current value and the given value giving the new value
+     * @return the new value, or null if the entry is removed
+     * @throws IllegalArgumentException if the value is null
+     */
+    default V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        return compute(key, (k, old) -> (old == null) ? value : remappingFunction.apply(old, value));
+    }
+
+    /**
+     * Stores the given value if there is no entry with the key. This default version is not atomic,
+     * the maps shared by several threads override it.
+     * @param key key of the entry
+     * @param value value to be stored
+     * @return the current value of the key, or null if the value is stored
+     */
+    default V putIfAbsent(K key, V value) {
+        V current = get(key);
+        if (current == null)
+            put(key, value);
+        return current;
+    }
+
     /**
      * Return an iterable set of keys of the entries in the map
      * @return Set that contains the keys of the Map
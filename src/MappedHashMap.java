@@ -0,0 +1,579 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent hash map that lives in a memory-mapped file, so that reopening a map of any size
+ * only maps the file instead of rebuilding the table. The layout follows OffHeapHashMap: a header,
+ * a slot table using linear probing with 16-byte slots (hash code of the serialized key, key length,
+ * file offset of the record), then the records, each holding the length of the serialized value,
+ * the key bytes and the value bytes. Hash codes are computed from the serialized bytes with
+ * OffHeapHashMap.hashBytes, so they are the same in every run of the program.
+ *
+ * The file is mapped in regions of 1 GB, and a record never crosses a region boundary. Growing the
+ * table (or compacting the records) never modifies the file in place: the live entries are written
+ * to a new file next to it, which is forced to the disk and then renamed over the old file in one
+ * atomic step, so the file on disk is always either the old map or the new one.
+ *
+ * Writes go to the mapped memory and reach the disk when the operating system flushes the pages or
+ * when force() is called. The header holds a dirty flag that is set and forced to the disk before the
+ * first modification after a checkpoint touches a slot or a record, and cleared by force(); a map
+ * opened with the flag set (after a crash between two checkpoints) is rebuilt into a new file,
+ * dropping the records that cannot be read back.
+ *
+ * The map is not thread-safe, and a file must not be opened by two maps at the same time.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class MappedHashMap<K, V> extends AbstractMap<K, V> implements AutoCloseable {
+    private static final long MAGIC = 0x4D4150484153484DL; //"MAPHASHM"
+    private static final int CAPACITY = 8, COUNT = 12, DATA_TOP = 16, LIVE = 24, GARBAGE = 32, DIRTY = 40;
+    private static final int HEADER = 64; //bytes of the header, the slot table follows
+    private static final int SLOT_BYTES = 16; //int hash, int key length, long record offset
+    private static final double MAX_LOAD = 0.5; //ratio of entries to slots that triggers growing
+
+    /*--------------Nested Storage class ------------------*/
+
+    /**
+     * A file mapped into memory in regions of REGION bytes, which grows by remapping its last region.
+     */
+    private static class Storage {
+        private static final int REGION_SHIFT = 30;
+        private static final long REGION = 1L << REGION_SHIFT;
+        private final FileChannel channel;
+        private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+        private long length = 0; //mapped length of the file
+
+        public Storage(Path path, long minLength) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+            ensureLength(Math.max(minLength, channel.size()));
+        }
+
+        /**
+         * Maps the file up to at least the given length, doubling the mapped length when growing.
+         * @param needed long number of bytes that must be mapped
+         * @throws IOException if the file cannot be mapped
+         */
+        public void ensureLength(long needed) throws IOException {
+            if (needed <= length) return;
+            long newLength = Math.max(needed, 2 * length);
+            int count = (int) ((newLength + REGION - 1) >>> REGION_SHIFT);
+            int first = Math.max(0, regions.length - 1); //the last region is remapped with its new length
+            regions = Arrays.copyOf(regions, count);
+            for (int r = first; r < count; r++) {
+                long start = (long) r << REGION_SHIFT;
+                regions[r] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(REGION, newLength - start));
+            }
+            length = newLength;
+        }
+
+        public ByteBuffer region(long pos) {return regions[(int) (pos >>> REGION_SHIFT)]; }
+        public static int at(long pos) {return (int) (pos & (REGION - 1)); }
+        public int getInt(long pos) {return region(pos).getInt(at(pos)); }
+        public long getLong(long pos) {return region(pos).getLong(at(pos)); }
+        public void putInt(long pos, int value) {region(pos).putInt(at(pos), value); }
+        public void putLong(long pos, long value) {region(pos).putLong(at(pos), value); }
+
+        /**
+         * Writes the mapped regions to the disk.
+         */
+        public void force() {
+            for (MappedByteBuffer r : regions)
+                r.force();
+        }
+
+        /**
+         * Writes the given bytes of the first region to the disk.
+         * @param pos int index of the first byte
+         * @param bytes int number of bytes
+         */
+        public void force(int pos, int bytes) {regions[0].force(pos, bytes); }
+
+        /**
+         * Cuts the file to the given length. The regions must not be used after it.
+         * @param newLength long length of the file
+         * @throws IOException if the file cannot be truncated
+         */
+        public void truncate(long newLength) throws IOException {channel.truncate(newLength); }
+
+        public void close() throws IOException {channel.close(); }
+    } /*-------------------End of nested Storage class ---------------*/
+
+    private final Path path;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private Storage file;
+    private int capacity; //number of slots, a power of two
+    private int n; //number of entries
+    private long dataTop; //file offset of the first free byte after the records
+    private long liveBytes, garbageBytes; //bytes of the records of the entries, and of the replaced or removed records
+    private boolean dirty; //true if the map was modified after the last checkpoint
+    private int modCount = 0; //number of structural modifications, used by fail-fast iterators
+    private ByteBuffer probe = ByteBuffer.allocate(64); //serialized form of the key being looked up
+
+    /**
+     * Opens the map stored in the given file, or creates an empty map with 1024 slots if the file
+     * does not exist.
+     * @param path path of the file
+     * @param keySerializer serializer of the keys
+     * @param valueSerializer serializer of the values
+     * @throws IOException if the file cannot be read or written
+     * @throws IllegalArgumentException if the file is not a map file
+     */
+    public MappedHashMap(Path path, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws IOException, IllegalArgumentException {
+        this.path = path;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        if (!Files.exists(path) || Files.size(path) == 0)
+            create(path, 1024).close();
+        if (!isMapFile(path))
+            throw new IllegalArgumentException("not a map file: " + path);
+        file = new Storage(path, HEADER);
+        load();
+        if (dirty) rebuild(capacity, true);
+    }
+
+    /**
+     * Creates a file holding an empty map with the given number of slots.
+     * @param target path of the file
+     * @param cap int number of slots, a power of two
+     * @return the storage of the new file
+     * @throws IOException if the file cannot be written
+     */
+    private static Storage create(Path target, int cap) throws IOException {
+        Files.deleteIfExists(target);
+        long recordsStart = HEADER + (long) cap * SLOT_BYTES;
+        Storage s = new Storage(target, recordsStart + 4096);
+        s.putLong(0, MAGIC);
+        s.putInt(CAPACITY, cap);
+        s.putInt(COUNT, 0);
+        s.putLong(DATA_TOP, recordsStart);
+        s.putLong(LIVE, 0);
+        s.putLong(GARBAGE, 0);
+        s.putInt(DIRTY, 0);
+        return s;
+    }
+
+    /**
+     * Tests if the file holds a whole header starting with MAGIC, reading it without mapping the
+     * file, so that a file of another kind is neither grown nor modified.
+     * @param target path of the file
+     * @return true if the file is a map file
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isMapFile(Path target) throws IOException {
+        if (Files.size(target) < HEADER) return false;
+        ByteBuffer magic = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+            while (magic.hasRemaining() && channel.read(magic, magic.position()) >= 0);
+        }
+        return !magic.hasRemaining() && magic.getLong(0) == MAGIC;
+    }
+
+    /**
+     * Reads the fields of the map from the header of the file.
+     */
+    private void load() {
+        capacity = file.getInt(CAPACITY);
+        n = file.getInt(COUNT);
+        dataTop = file.getLong(DATA_TOP);
+        liveBytes = file.getLong(LIVE);
+        garbageBytes = file.getLong(GARBAGE);
+        dirty = file.getInt(DIRTY) != 0;
+    }
+
+    /**
+     * Sets the dirty flag and forces it to the disk, if it is not set yet. Called before the first
+     * write of a modification, so that a crash in the middle of it is found by the next open.
+     */
+    private void markDirty() {
+        if (dirty) return;
+        file.putInt(DIRTY, 1);
+        file.force(DIRTY, 4);
+        dirty = true;
+    }
+
+    /**
+     * Writes the fields of the map into the header of the file.
+     */
+    private void store() {
+        file.putInt(COUNT, n);
+        file.putLong(DATA_TOP, dataTop);
+        file.putLong(LIVE, liveBytes);
+        file.putLong(GARBAGE, garbageBytes);
+    }
+
+    /**
+     * Writes all changes to the disk and clears the dirty flag, making the current state of the map
+     * the one found by the next open even after a crash.
+     */
+    public void force() {
+        file.force();
+        if (dirty) {
+            file.putInt(DIRTY, 0);
+            dirty = false;
+            file.force();
+        }
+    }
+
+    /**
+     * Forces the changes to the disk and closes the file.
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        force();
+        file.close();
+    }
+
+    /*Slot accessors*/
+    private static long slot(int i) {return HEADER + (long) i * SLOT_BYTES; }
+    private int slotHash(int i) {return file.getInt(slot(i)); }
+    private int slotKeyLength(int i) {return file.getInt(slot(i) + 4); }
+    private long slotRecord(int i) {return file.getLong(slot(i) + 8); }
+
+    private static void setSlot(Storage s, int i, int h, int keyLength, long record) {
+        s.putInt(slot(i), h);
+        s.putInt(slot(i) + 4, keyLength);
+        s.putLong(slot(i) + 8, record);
+    }
+
+    /**
+     * @return int the count of entries in the map
+     */
+    public int size() {return n; }
+
+    /**
+     * Serializes the key into the probe buffer.
+     * @param key key
+     * @return int number of bytes of the serialized key
+     */
+    private int serializeKey(K key) {
+        int length = keySerializer.size(key);
+        if (length > probe.capacity())
+            probe = ByteBuffer.allocate(Math.max(length, 2 * probe.capacity()));
+        keySerializer.write(key, probe, 0);
+        return length;
+    }
+
+    /**
+     * Tests if the key of the record at the given offset of s has the given bytes.
+     * @param s storage holding the record
+     * @param record long file offset of the record
+     * @param key buffer holding the key bytes from index from
+     * @param from int index of the first key byte
+     * @param length int number of key bytes
+     * @return true if the keys are equal
+     */
+    private static boolean keyEquals(Storage s, long record, ByteBuffer key, int from, int length) {
+        ByteBuffer buf = s.region(record);
+        int off = Storage.at(record) + 4;
+        int j = 0;
+        for (; j + 8 <= length; j += 8)
+            if (buf.getLong(off + j) != key.getLong(from + j)) return false;
+        for (; j < length; j++)
+            if (buf.get(off + j) != key.get(from + j)) return false;
+        return true;
+    }
+
+    /**
+     * Returns the index of the slot with the probe key, or the index of the empty slot that ends
+     * its probe sequence encoded as -(index + 1).
+     * @param h int hash code of the probe key
+     * @param length int number of bytes of the serialized probe key
+     * @return int index of the key, or -(index + 1) of the empty slot
+     */
+    private int findSlot(int h, int length) {
+        int i = h & (capacity - 1);
+        int s;
+        while ((s = slotHash(i)) != 0) {
+            if (s == h && slotKeyLength(i) == length && keyEquals(file, slotRecord(i), probe, 0, length))
+                return i;
+            i = (i + 1) & (capacity - 1);
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * Deserializes the value of the record at the given offset.
+     * @param record long file offset of a record
+     * @param keyLength int number of bytes of the key of the record
+     * @return V value
+     */
+    private V readValue(long record, int keyLength) {
+        ByteBuffer buf = file.region(record);
+        int off = Storage.at(record);
+        return valueSerializer.read(buf, off + 4 + keyLength, buf.getInt(off));
+    }
+
+    /**
+     * Reserves room for a record after the last record, at the start of the next region if it
+     * does not fit in the current one.
+     * @param s storage of the map
+     * @param top long file offset of the first free byte
+     * @param bytes int size of the record
+     * @return long file offset of the record
+     * @throws IOException if the file cannot be grown
+     */
+    private static long allocate(Storage s, long top, int bytes) throws IOException {
+        if (bytes > Storage.REGION) throw new IllegalArgumentException("record larger than a region");
+        if (Storage.at(top) + (long) bytes > Storage.REGION)
+            top = (top | (Storage.REGION - 1)) + 1;
+        s.ensureLength(top + bytes);
+        return top;
+    }
+
+    /**
+     * Appends a record with the key in the probe buffer and the given value.
+     * @param keyLength int number of bytes of the serialized key
+     * @param value value
+     * @param valueLength int number of bytes of the serialized value
+     * @return long file offset of the record
+     */
+    private long writeRecord(int keyLength, V value, int valueLength) {
+        int bytes = 4 + keyLength + valueLength;
+        long record;
+        try {
+            record = allocate(file, dataTop, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buf = file.region(record);
+        int off = Storage.at(record);
+        buf.putInt(off, valueLength);
+        buf.put(off + 4, probe, 0, keyLength);
+        valueSerializer.write(value, buf, off + 4 + keyLength);
+        dataTop = record + bytes;
+        liveBytes += bytes;
+        return record;
+    }
+
+    /**
+     * Gives the value of the entry with the given key, comparing serialized keys.
+     * @param key element of the entry
+     * @return V value of the entry or null if there is no such entry
+     */
+    public V get(K key) {
+        int length = serializeKey(key);
+        int i = findSlot(OffHeapHashMap.hashBytes(probe, 0, length), length);
+        if (i < 0) return null;
+        return readValue(slotRecord(i), length);
+    }
+
+    /**
+     * Insert to or update the map with the given key-value pair. The record is written before the
+     * slot that points to it.
+     * @param key key of the entry to be inserted (or updated if already exists)
+     * @param value value of the entry to be inserted (or updated if already exists), not null
+     * @return null if the operation result with insert, the old V value otherwise
+     * @throws IllegalArgumentException if the value is null
+     * @throws UncheckedIOException if the file cannot be grown
+     */
+    public V put(K key, V value) throws IllegalArgumentException, UncheckedIOException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        int length = serializeKey(key);
+        int h = OffHeapHashMap.hashBytes(probe, 0, length);
+        int valueLength = valueSerializer.size(value);
+        int i = findSlot(h, length);
+        V old = null;
+        markDirty();
+        if (i >= 0) {
+            long record = slotRecord(i);
+            old = readValue(record, length);
+            int oldLength = file.getInt(record);
+            if (oldLength == valueLength)
+                valueSerializer.write(value, file.region(record), Storage.at(record) + 4 + length);
+            else {
+                garbageBytes += 4 + length + oldLength;
+                liveBytes -= 4 + length + oldLength;
+                setSlot(file, i, h, length, writeRecord(length, value, valueLength));
+            }
+        } else {
+            setSlot(file, -(i + 1), h, length, writeRecord(length, value, valueLength));
+            n++;
+            modCount++;
+        }
+        store();
+        if (n > capacity * MAX_LOAD)
+            rebuild(2 * capacity, false);
+        return old;
+    }
+
+    /**
+     * Remove the entry with the given key, then shift the following slots of the cluster back.
+     * @param key of the entry to be removed
+     * @return V value of the removed entry or null if there is no such entry
+     */
+    public V remove(K key) {
+        int length = serializeKey(key);
+        int i = findSlot(OffHeapHashMap.hashBytes(probe, 0, length), length);
+        if (i < 0) return null;
+        long record = slotRecord(i);
+        V removed = readValue(record, length);
+        markDirty();
+        int bytes = 4 + length + file.getInt(record);
+        liveBytes -= bytes;
+        garbageBytes += bytes;
+        int mask = capacity - 1;
+        int j = (i + 1) & mask;
+        int s;
+        while ((s = slotHash(j)) != 0) {
+            int home = s & mask;
+            //the slot j may fill slot i unless its home lies cyclically in (i, j]
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                setSlot(file, i, s, slotKeyLength(j), slotRecord(j));
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        setSlot(file, i, 0, 0, 0);
+        n--;
+        modCount++;
+        store();
+        return removed;
+    }
+
+    /**
+     * Rewrites the map into a new file without the space of the replaced and removed records.
+     */
+    public void compact() {rebuild(capacity, false); }
+
+    /**
+     * Writes the live entries into a new file with the given number of slots, forces it to the disk
+     * and renames it over the file of the map, then forces the directory so that the rename itself
+     * survives a crash, and maps the new file. Slots whose records lie outside of the written area
+     * are skipped, and of the slots repeating a key the one with the newest record (the highest
+     * file offset, records are only appended) is kept. When recovering a map left dirty by a crash,
+     * a slot may also have reached the disk before its record, as pages are flushed in no fixed
+     * order, so slots whose key bytes do not hash to the hash code of the slot are skipped too.
+     * The first pass fills the new table with the offsets of the old records, the second copies
+     * the chosen records.
+     * @param newCap int number of slots of the new table, a power of two
+     * @param recover true to check the key bytes of every record against the hash code of its slot
+     * @throws UncheckedIOException if the new file cannot be written
+     */
+    private void rebuild(int newCap, boolean recover) throws UncheckedIOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Storage out = create(tmp, newCap);
+            int count = 0;
+            long recordsStart = HEADER + (long) capacity * SLOT_BYTES;
+            for (int j = 0; j < capacity; j++) {
+                int h = slotHash(j);
+                if (h == 0) continue;
+                int keyLength = slotKeyLength(j);
+                long record = slotRecord(j);
+                if (keyLength < 0 || record < recordsStart || record + 4 + keyLength > dataTop) continue;
+                int valueLength = file.getInt(record);
+                if (valueLength < 0 || record + 4 + keyLength + valueLength > dataTop) continue;
+                ByteBuffer from = file.region(record);
+                if (recover && OffHeapHashMap.hashBytes(from, Storage.at(record) + 4, keyLength) != h) continue;
+                int i = h & (newCap - 1);
+                int s;
+                while ((s = out.getInt(slot(i))) != 0) {
+                    if (s == h && out.getInt(slot(i) + 4) == keyLength
+                            && keyEquals(file, out.getLong(slot(i) + 8), from, Storage.at(record) + 4, keyLength))
+                        break;
+                    i = (i + 1) & (newCap - 1);
+                }
+                if (s == 0) count++;
+                if (s == 0 || record > out.getLong(slot(i) + 8))
+                    setSlot(out, i, h, keyLength, record);
+            }
+            long top = HEADER + (long) newCap * SLOT_BYTES;
+            long live = 0;
+            for (int i = 0; i < newCap; i++) {
+                if (out.getInt(slot(i)) == 0) continue;
+                long record = out.getLong(slot(i) + 8);
+                int bytes = 4 + out.getInt(slot(i) + 4) + file.getInt(record);
+                long copy = allocate(out, top, bytes);
+                out.region(copy).put(Storage.at(copy), file.region(record), Storage.at(record), bytes);
+                out.putLong(slot(i) + 8, copy);
+                top = copy + bytes;
+                live += bytes;
+            }
+            out.putInt(COUNT, count);
+            out.putLong(DATA_TOP, top);
+            out.putLong(LIVE, live);
+            out.force();
+            out.truncate(top);
+            out.close();
+            file.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(path.toAbsolutePath().getParent());
+            file = new Storage(path, HEADER);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        load();
+        modCount++;
+    }
+
+    /**
+     * Writes the entries of the given directory to the disk, which makes a rename in it durable.
+     * On platforms that cannot open a directory as a channel, the directory is not forced.
+     * @param dir path of the directory
+     * @throws IOException if the directory cannot be forced
+     */
+    private static void forceDirectory(Path dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel c = channel) {
+            c.force(true);
+        }
+    }
+
+    /**
+     * Supporting classes for a lazy iterator that walks the slots in place and deserializes each
+     * entry when it is returned. The iterator fails fast if the map is structurally modified.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int i = 0; //index of the next slot to test
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (i < capacity && slotHash(i) == 0) i++;
+            return i < capacity;
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            int keyLength = slotKeyLength(i);
+            long record = slotRecord(i++);
+            K key = keySerializer.read(file.region(record), Storage.at(record) + 4, keyLength);
+            return new MapEntry<>(key, readValue(record, keyLength));
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Return an iterable set of deserialized snapshot entries
+     * @return Iterable set of entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
@@ -0,0 +1,166 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from object keys to long values that stores the values unboxed in an array parallel
+ * to the array of keys. A null key marks an empty slot, so null keys are not allowed. Missing keys
+ * are reported with a configurable value.
+ * @param <K> key element
+ */
+public class ObjectLongHashMap<K> extends AbstractPrimitiveHashMap {
+    private K[] keys; //key of each slot, null for an empty slot
+    private long[] values; //value of each slot
+    private final long noEntryValue; //value returned for missing keys
+
+    /*Constructors*/
+    public ObjectLongHashMap() {this(16); }
+    public ObjectLongHashMap(int cap) {this(cap, 0); }
+
+    /**
+     * Constructor creates an empty map with the given table length.
+     * @param cap int length of the table
+     * @param noEntryValue long value returned by get, put and remove for missing keys
+     */
+    public ObjectLongHashMap(int cap, long noEntryValue) {
+        super(cap);
+        this.noEntryValue = noEntryValue;
+    }
+
+    /**
+     * Create the arrays of the table
+     */
+    protected void createTable() {
+        keys = (K[]) new Object[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Moves the entries of the current arrays into new arrays of length capacity.
+     */
+    protected void rehash() {
+        K[] oldKeys = keys;
+        long[] oldValues = values;
+        createTable();
+        for (int j = 0; j < oldKeys.length; j++)
+            if (oldKeys[j] != null) {
+                int i = hash(oldKeys[j].hashCode()) & mask;
+                while (keys[i] != null)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+    }
+
+    /**
+     * Returns the index of the slot with the given key, or the index of the empty slot that ends
+     * its probe sequence encoded as -(index + 1).
+     * @param key K key, not null
+     * @return int index of the key, or -(index + 1) of the empty slot
+     * @throws IllegalArgumentException if the key is null
+     */
+    private int findSlot(K key) throws IllegalArgumentException {
+        if (key == null) throw new IllegalArgumentException("null key");
+        int i = hash(key.hashCode()) & mask;
+        while (keys[i] != null) {
+            if (keys[i].equals(key)) return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * @param key K key
+     * @return the value associated with the key, or the no-entry value if there is no such entry
+     */
+    public long get(K key) {
+        int i = findSlot(key);
+        return (i < 0) ? noEntryValue : values[i];
+    }
+
+    /**
+     * @param key K key
+     * @return true if the map has an entry with the key
+     */
+    public boolean containsKey(K key) {return findSlot(key) >= 0; }
+
+    /**
+     * Associates the value with the key.
+     * @param key K key, not null
+     * @param value long value
+     * @return the old value of the key, or the no-entry value if the key is new
+     */
+    public long put(K key, long value) {
+        int i = findSlot(key);
+        if (i >= 0) {
+            long old = values[i];
+            values[i] = value;
+            return old;
+        }
+        i = -(i + 1);
+        keys[i] = key;
+        values[i] = value;
+        n++;
+        modCount++;
+        checkGrow();
+        return noEntryValue;
+    }
+
+    /**
+     * Removes the entry with the given key, then shifts the following entries of the cluster back.
+     * @param key K key
+     * @return the value of the removed entry, or the no-entry value if there is no such entry
+     */
+    public long remove(K key) {
+        int i = findSlot(key);
+        if (i < 0) return noEntryValue;
+        long removed = values[i];
+        int j = (i + 1) & mask;
+        while (keys[j] != null) {
+            if (canShift(i, hash(keys[j].hashCode()) & mask, j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[i] = null;
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Supporting classes for the key iterator, walks the key array in place.
+     * The iterator fails fast if the map is structurally modified after it is created.
+     */
+    private class KeyIterator implements Iterator<K> {
+        private int i = 0; //index of the next slot to test
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (i < capacity && keys[i] == null) i++;
+            return i < capacity;
+        }
+
+        public K next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return keys[i++];
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class KeyIterable implements Iterable<K> {
+        public Iterator<K> iterator() {return new KeyIterator(); }
+    }
+
+    /**
+     * @return an iterable of the keys of the map
+     */
+    public Iterable<K> keySet() {return new KeyIterable(); }
+}
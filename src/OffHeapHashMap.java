@@ -0,0 +1,402 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map that keeps its entries outside of the Java heap, in direct ByteBuffers, so that the
+ * garbage collector never walks them however many entries the map holds. Keys and values are
+ * stored in their serialized form, given by the Serializer of each.
+ *
+ * The slot table uses linear probing like ProbeHashMap. Each slot takes 16 bytes: the hash code
+ * of the serialized key (0 for an empty slot), the length of the serialized key, and the address
+ * of the record of the entry. A record holds the length of the serialized value, then the key
+ * bytes and the value bytes. Records are appended to an arena of direct buffers (chunks) that
+ * grow up to 64 MB each; an address is the index of the chunk in the high 32 bits and the offset
+ * in the low 32 bits. The slot table is split into chunks of 4M slots the same way.
+ *
+ * A lookup serializes the probe key once into a heap buffer, hashes its bytes, and compares those
+ * bytes with the stored key bytes, so no stored key is ever deserialized. Removal shifts the
+ * following slots of the cluster back into the freed slot. Replacing a value with one of the same
+ * size writes it in place; otherwise a new record is appended and the old one becomes garbage,
+ * which is dropped by compact() or by the next resize once it outweighs the live records.
+ *
+ * The map is not thread-safe. The entries returned by entrySet() are deserialized snapshots.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class OffHeapHashMap<K, V> extends AbstractMap<K, V> {
+    private static final int SLOT_BYTES = 16; //int hash, int key length, long record address
+    private static final int SLOT_CHUNK_SHIFT = 22; //a slot chunk holds at most 4M slots (64 MB)
+    private static final int MIN_ARENA_CHUNK = 1 << 16; //size of the first arena chunk
+    private static final int MAX_ARENA_CHUNK = 1 << 26; //arena chunks grow up to 64 MB
+    private static final double MAX_LOAD = 0.5; //ratio of entries to slots that triggers growing
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private ByteBuffer[] slots; //chunks of the slot table
+    private int capacity; //number of slots, a power of two
+    private int n = 0; //number of entries
+    private int modCount = 0; //number of structural modifications, used by fail-fast iterators
+    private ByteBuffer[] arena; //chunks of the record arena, the last one is being filled
+    private int arenaCount; //number of arena chunks in use
+    private long liveBytes = 0; //bytes of the records of the entries
+    private long garbageBytes = 0; //bytes of the records that were replaced or removed
+    private ByteBuffer probe = ByteBuffer.allocate(64); //serialized form of the key being looked up
+
+    /**
+     * The constructor creates an empty map with a table of 1024 slots.
+     * @param keySerializer serializer of the keys
+     * @param valueSerializer serializer of the values
+     */
+    public OffHeapHashMap(Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(keySerializer, valueSerializer, 1024);
+    }
+
+    /**
+     * The constructor creates an empty map whose table length is the least power of two greater
+     * than or equal to the given length.
+     * @param keySerializer serializer of the keys
+     * @param valueSerializer serializer of the values
+     * @param cap int number of slots of the table
+     */
+    public OffHeapHashMap(Serializer<K> keySerializer, Serializer<V> valueSerializer, int cap) {
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        capacity = 2;
+        while (capacity < cap) capacity <<= 1;
+        slots = createSlots(capacity);
+        arena = new ByteBuffer[] {ByteBuffer.allocateDirect(MIN_ARENA_CHUNK)};
+        arenaCount = 1;
+    }
+
+    /**
+     * Computes a hash code from serialized bytes, the same in every run of the program.
+     * @param buf buffer holding the bytes
+     * @param from int index of the first byte
+     * @param length int number of bytes
+     * @return int hash code, never 0
+     */
+    protected static int hashBytes(ByteBuffer buf, int from, int length) {
+        int h = 0x811C9DC5;
+        for (int j = 0; j < length; j++) {
+            h ^= buf.get(from + j);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return (h == 0) ? 1 : h;
+    }
+
+    /**
+     * @param cap int number of slots, a power of two
+     * @return the zeroed chunks of a slot table
+     */
+    private static ByteBuffer[] createSlots(int cap) {
+        int perChunk = Math.min(cap, 1 << SLOT_CHUNK_SHIFT);
+        ByteBuffer[] chunks = new ByteBuffer[cap / perChunk];
+        for (int c = 0; c < chunks.length; c++)
+            chunks[c] = ByteBuffer.allocateDirect(perChunk * SLOT_BYTES);
+        return chunks;
+    }
+
+    /*Slot accessors*/
+    private static ByteBuffer chunk(ByteBuffer[] table, int i) {return table[i >>> SLOT_CHUNK_SHIFT]; }
+    private static int offset(int i) {return (i & ((1 << SLOT_CHUNK_SHIFT) - 1)) * SLOT_BYTES; }
+    private static int slotHash(ByteBuffer[] table, int i) {return chunk(table, i).getInt(offset(i)); }
+    private static int slotKeyLength(ByteBuffer[] table, int i) {return chunk(table, i).getInt(offset(i) + 4); }
+    private static long slotAddress(ByteBuffer[] table, int i) {return chunk(table, i).getLong(offset(i) + 8); }
+
+    private static void setSlot(ByteBuffer[] table, int i, int h, int keyLength, long address) {
+        ByteBuffer c = chunk(table, i);
+        int off = offset(i);
+        c.putInt(off, h);
+        c.putInt(off + 4, keyLength);
+        c.putLong(off + 8, address);
+    }
+
+    /*Record accessors*/
+    private ByteBuffer record(long address) {return arena[(int) (address >>> 32)]; }
+    private static int recordOffset(long address) {return (int) address; }
+
+    /**
+     * @return int the count of entries in the map
+     */
+    public int size() {return n; }
+
+    /**
+     * @return long number of bytes of direct memory held by the slot table and the arena
+     */
+    public long offHeapBytes() {
+        long bytes = (long) capacity * SLOT_BYTES;
+        for (int c = 0; c < arenaCount; c++)
+            bytes += arena[c].capacity();
+        return bytes;
+    }
+
+    /**
+     * Serializes the key into the probe buffer.
+     * @param key key
+     * @return int number of bytes of the serialized key
+     */
+    private int serializeKey(K key) {
+        int length = keySerializer.size(key);
+        if (length > probe.capacity())
+            probe = ByteBuffer.allocate(Math.max(length, 2 * probe.capacity()));
+        keySerializer.write(key, probe, 0);
+        return length;
+    }
+
+    /**
+     * Tests if the key of slot i has the bytes of the probe buffer.
+     * @param i int index of a non-empty slot
+     * @param length int number of bytes of the serialized probe key
+     * @return true if the keys are equal
+     */
+    private boolean keyEquals(int i, int length) {
+        if (slotKeyLength(slots, i) != length) return false;
+        long address = slotAddress(slots, i);
+        ByteBuffer buf = record(address);
+        int off = recordOffset(address) + 4;
+        int j = 0;
+        for (; j + 8 <= length; j += 8)
+            if (buf.getLong(off + j) != probe.getLong(j)) return false;
+        for (; j < length; j++)
+            if (buf.get(off + j) != probe.get(j)) return false;
+        return true;
+    }
+
+    /**
+     * Returns the index of the slot with the probe key, or the index of the empty slot that ends
+     * its probe sequence encoded as -(index + 1).
+     * @param h int hash code of the probe key
+     * @param length int number of bytes of the serialized probe key
+     * @return int index of the key, or -(index + 1) of the empty slot
+     */
+    private int findSlot(int h, int length) {
+        int i = h & (capacity - 1);
+        int s;
+        while ((s = slotHash(slots, i)) != 0) {
+            if (s == h && keyEquals(i, length))
+                return i;
+            i = (i + 1) & (capacity - 1);
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * Deserializes the value of the record at the given address.
+     * @param address long address of a record
+     * @param keyLength int number of bytes of the key of the record
+     * @return V value
+     */
+    private V readValue(long address, int keyLength) {
+        ByteBuffer buf = record(address);
+        int off = recordOffset(address);
+        return valueSerializer.read(buf, off + 4 + keyLength, buf.getInt(off));
+    }
+
+    /**
+     * Reserves room for a record in the arena, starting a new chunk when the last one is full.
+     * @param bytes int size of the record
+     * @return long address of the record
+     */
+    private long allocate(int bytes) {
+        ByteBuffer last = arena[arenaCount - 1];
+        if (last.remaining() < bytes) {
+            int size = Math.max(bytes, Math.min(MAX_ARENA_CHUNK, 2 * last.capacity()));
+            if (arenaCount == arena.length)
+                arena = Arrays.copyOf(arena, 2 * arena.length);
+            last = arena[arenaCount++] = ByteBuffer.allocateDirect(size);
+        }
+        long address = ((long) (arenaCount - 1) << 32) | last.position();
+        last.position(last.position() + bytes);
+        return address;
+    }
+
+    /**
+     * Appends a record with the key in the probe buffer and the given value.
+     * @param keyLength int number of bytes of the serialized key
+     * @param value value
+     * @param valueLength int number of bytes of the serialized value
+     * @return long address of the record
+     */
+    private long writeRecord(int keyLength, V value, int valueLength) {
+        int bytes = 4 + keyLength + valueLength;
+        long address = allocate(bytes);
+        ByteBuffer buf = record(address);
+        int off = recordOffset(address);
+        buf.putInt(off, valueLength);
+        buf.put(off + 4, probe, 0, keyLength);
+        valueSerializer.write(value, buf, off + 4 + keyLength);
+        liveBytes += bytes;
+        return address;
+    }
+
+    /**
+     * Gives the value of the entry with the given key, comparing serialized keys.
+     * @param key element of the entry
+     * @return V value of the entry or null if there is no such entry
+     */
+    public V get(K key) {
+        int length = serializeKey(key);
+        int i = findSlot(hashBytes(probe, 0, length), length);
+        if (i < 0) return null;
+        return readValue(slotAddress(slots, i), length);
+    }
+
+    /**
+     * Insert to or update the map with the given key-value pair.
+     * @param key key of the entry to be inserted (or updated if already exists)
+     * @param value value of the entry to be inserted (or updated if already exists), not null
+     * @return null if the operation result with insert, the old V value otherwise
+     * @throws IllegalArgumentException if the value is null
+     */
+    public V put(K key, V value) throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("null value");
+        int length = serializeKey(key);
+        int h = hashBytes(probe, 0, length);
+        int valueLength = valueSerializer.size(value);
+        int i = findSlot(h, length);
+        if (i >= 0) {
+            long address = slotAddress(slots, i);
+            V old = readValue(address, length);
+            ByteBuffer buf = record(address);
+            int off = recordOffset(address);
+            int oldLength = buf.getInt(off);
+            if (oldLength == valueLength)
+                valueSerializer.write(value, buf, off + 4 + length);
+            else {
+                garbageBytes += 4 + length + oldLength;
+                liveBytes -= 4 + length + oldLength;
+                setSlot(slots, i, h, length, writeRecord(length, value, valueLength));
+            }
+            return old;
+        }
+        setSlot(slots, -(i + 1), h, length, writeRecord(length, value, valueLength));
+        n++;
+        modCount++;
+        if (n > capacity * MAX_LOAD)
+            rebuild(2 * capacity, garbageBytes > liveBytes);
+        return null;
+    }
+
+    /**
+     * Remove the entry with the given key, then shift the following slots of the cluster back.
+     * @param key of the entry to be removed
+     * @return V value of the removed entry or null if there is no such entry
+     */
+    public V remove(K key) {
+        int length = serializeKey(key);
+        int i = findSlot(hashBytes(probe, 0, length), length);
+        if (i < 0) return null;
+        long address = slotAddress(slots, i);
+        V removed = readValue(address, length);
+        int bytes = 4 + length + record(address).getInt(recordOffset(address));
+        liveBytes -= bytes;
+        garbageBytes += bytes;
+        int mask = capacity - 1;
+        int j = (i + 1) & mask;
+        int s;
+        while ((s = slotHash(slots, j)) != 0) {
+            int home = s & mask;
+            //the slot j may fill slot i unless its home lies cyclically in (i, j]
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                setSlot(slots, i, s, slotKeyLength(slots, j), slotAddress(slots, j));
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        setSlot(slots, i, 0, 0, 0);
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Copies the live records into a new arena, releasing the space of the replaced and removed records.
+     */
+    public void compact() {rebuild(capacity, true); }
+
+    /**
+     * Moves the slots into a new table of the given length, placing them by their stored hash
+     * codes, and copies the live records into a new arena if compacting.
+     * @param newCap int number of slots of the new table, a power of two
+     * @param compacting true to copy the records into a new arena
+     */
+    private void rebuild(int newCap, boolean compacting) {
+        ByteBuffer[] oldSlots = slots;
+        int oldCap = capacity;
+        ByteBuffer[] oldArena = arena;
+        if (compacting) {
+            arena = new ByteBuffer[] {ByteBuffer.allocateDirect(
+                    (int) Math.max(MIN_ARENA_CHUNK, Math.min(MAX_ARENA_CHUNK, liveBytes)))};
+            arenaCount = 1;
+            garbageBytes = 0;
+        }
+        slots = createSlots(newCap);
+        capacity = newCap;
+        for (int j = 0; j < oldCap; j++) {
+            int h = slotHash(oldSlots, j);
+            if (h == 0) continue;
+            int keyLength = slotKeyLength(oldSlots, j);
+            long address = slotAddress(oldSlots, j);
+            if (compacting) {
+                ByteBuffer from = oldArena[(int) (address >>> 32)];
+                int off = recordOffset(address);
+                int bytes = 4 + keyLength + from.getInt(off);
+                address = allocate(bytes);
+                record(address).put(recordOffset(address), from, off, bytes);
+            }
+            int i = h & (newCap - 1);
+            while (slotHash(slots, i) != 0)
+                i = (i + 1) & (newCap - 1);
+            setSlot(slots, i, h, keyLength, address);
+        }
+        modCount++;
+    }
+
+    /**
+     * Supporting classes for a lazy iterator that walks the slots in place and deserializes each
+     * entry when it is returned. The iterator fails fast if the map is structurally modified.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int i = 0; //index of the next slot to test
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (i < capacity && slotHash(slots, i) == 0) i++;
+            return i < capacity;
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            int keyLength = slotKeyLength(slots, i);
+            long address = slotAddress(slots, i++);
+            ByteBuffer buf = record(address);
+            int off = recordOffset(address);
+            K key = keySerializer.read(buf, off + 4, keyLength);
+            V value = valueSerializer.read(buf, off + 4 + keyLength, buf.getInt(off));
+            return new MapEntry<>(key, value);
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Return an iterable set of deserialized snapshot entries
+     * @return Iterable set of entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
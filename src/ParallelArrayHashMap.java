@@ -0,0 +1,224 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map that uses linear probing like ProbeHashMap, but keeps the keys, the values and the
+ * hash codes of the keys in three parallel arrays instead of an array of entry objects. A probe
+ * scans the contiguous array of hash codes and reads a key only when its hash code matches, and
+ * no entry object is created for a stored pair. A hash code of 0 marks an empty slot, so stored
+ * hash codes of 0 are replaced by 1. Removal shifts the following entries of the cluster back
+ * into the freed slot, so the table never contains defunct markers.
+ *
+ * The entries returned by entrySet() are created on demand and are snapshots of the stored pairs.
+ * @param <K> key element of the entry
+ * @param <V> value element of the entry
+ */
+public class ParallelArrayHashMap<K, V> extends AbstractHashMap<K, V> {
+    private int[] hashes; //hash code of the key in each slot, 0 for an empty slot
+    private K[] keys; //key of each slot
+    private V[] values; //value of each slot
+
+    /*Constructors*/
+    public ParallelArrayHashMap() {super(); }
+    public ParallelArrayHashMap(int cap) {super(cap); }
+    public ParallelArrayHashMap(int cap, int p) {super(cap, p); }
+    public ParallelArrayHashMap(int cap, HashMode mode) {super(cap, mode); }
+
+    /**
+     * Create the three arrays of the table
+     */
+    protected void createTable() {
+        hashes = new int[capacity];
+        keys = (K[]) new Object[capacity];
+        values = (V[]) new Object[capacity];
+    }
+
+    /**
+     * Gives the hash code that is stored for a key with the given hash code.
+     * @param h int hash code computed by hash()
+     * @return h, or 1 if h is 0 which marks the empty slots
+     */
+    private static int stored(int h) {return (h == 0) ? 1 : h; }
+
+    /**
+     * Returns the index of the slot with the given key, or the index of the empty slot that ends
+     * its probe sequence encoded as -(index + 1).
+     * @param h int stored hash code of the key
+     * @param k key element
+     * @return int index of the key, or -(index + 1) of the empty slot
+     */
+    private int findSlot(int h, K k) {
+        int i = index(h);
+        while (hashes[i] != 0) {
+            if (hashes[i] == h && keys[i].equals(k))
+                return i;
+            i = nextIndex(i, capacity);
+        }
+        return -(i + 1);
+    }
+
+    /**
+     * Moves the pairs of the current arrays into new arrays of length capacity.
+     */
+    protected void rehash() {
+        int[] oldHashes = hashes;
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        createTable();
+        for (int j = 0; j < oldHashes.length; j++)
+            if (oldHashes[j] != 0) {
+                int i = index(oldHashes[j]);
+                while (hashes[i] != 0)
+                    i = nextIndex(i, capacity);
+                hashes[i] = oldHashes[j];
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+    }
+
+    /**
+     * Gives the value of the entry with the given hash code and key element or null if
+     * there is no such entry
+     * @param h int hash code of the entry
+     * @param k key element of the entry
+     * @return V value
+     */
+    protected V bucketGet(int h, K k) {
+        int i = findSlot(stored(h), k);
+        if (i < 0) return null;
+        return values[i];
+    }
+
+    /**
+     * Associates key k with value v in bucket with hash value h; returns old value
+     * @param h int hash code of the new entry
+     * @param k K key element of the new entry
+     * @param v V value element of the new entry, or the new value of the existing entry
+     * @return null or old value
+     */
+    protected V bucketPut(int h, K k, V v) {
+        h = stored(h);
+        int i = findSlot(h, k);
+        if (i >= 0) {
+            V old = values[i];
+            values[i] = v;
+            return old;
+        }
+        i = -(i + 1);
+        hashes[i] = h;
+        keys[i] = k;
+        values[i] = v;
+        n++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Removes entry having key k from bucket with hash value h (if any). Each following entry of
+     * the cluster whose home slot does not lie between the freed slot and itself is moved back
+     * into the freed slot, which keeps every entry reachable from its home slot.
+     * @param h int hash code of the entry to be removed
+     * @param k K key element of the entry to be removed
+     * @return returns the removed value of the entry
+     */
+    protected V bucketRemove(int h, K k) {
+        int i = findSlot(stored(h), k);
+        if (i < 0) return null;
+        V removed = values[i];
+        int j = nextIndex(i, capacity);
+        while (hashes[j] != 0) {
+            int home = index(hashes[j]);
+            //the entry at j may fill slot i unless its home lies cyclically in (i, j]
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                hashes[i] = hashes[j];
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            j = nextIndex(j, capacity);
+        }
+        hashes[i] = 0;
+        keys[i] = null;
+        values[i] = null;
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Supporting classes for lazy iterators that walk the slots of the arrays in place.
+     * The iterators fail fast if the map is structurally modified after they are created.
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int i = 0; //index of the next slot to test
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (i < capacity && hashes[i] == 0) i++;
+            return i < capacity;
+        }
+
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return element(i++);
+        }
+
+        /**
+         * Gives the element of the iteration stored at the given slot.
+         * @param i int index of a non-empty slot
+         * @return the element at slot i
+         */
+        protected abstract T element(int i);
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class KeyIterator extends SlotIterator<K> {
+        protected K element(int i) {return keys[i]; }
+    }
+
+    private class ValueIterator extends SlotIterator<V> {
+        protected V element(int i) {return values[i]; }
+    }
+
+    private class EntryIterator extends SlotIterator<Entry<K, V>> {
+        protected Entry<K, V> element(int i) {return new MapEntry<>(keys[i], values[i]); }
+    }
+
+    private class KeyIterable implements Iterable<K> {
+        public Iterator<K> iterator() {return new KeyIterator(); }
+    }
+
+    private class ValueIterable implements Iterable<V> {
+        public Iterator<V> iterator() {return new ValueIterator(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Returns an iterable of the keys that reads the key array directly.
+     * @return iterable of keys
+     */
+    public Iterable<K> keySet() {return new KeyIterable(); }
+
+    /**
+     * Returns an iterable of the values that reads the value array directly.
+     * @return iterable of values
+     */
+    public Iterable<V> values() {return new ValueIterable(); }
+
+    /**
+     * Returns an iterable collection of all key-value entries of the map. Each entry is created
+     * when the iteration reaches it.
+     * @return Iterable collection of all the entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
@@ -1,27 +1,144 @@
-import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
 
 /**
  * ProbeHashMap class that uses linear probing for collision resolution
- * This class has array of Entry underlying data structure.
+ * This class has array of Entry underlying data structure. The entries cache the hash
+ * codes of their keys, so probes compare keys only when the hash codes match.
  * @param <K> key element of the entry
  * @param <V> value element of the entry
  */
 public class ProbeHashMap<K, V> extends AbstractHashMap<K, V> {
-    private MapEntry<K, V>[] table; //declare the array which is the main table
-    private MapEntry<K, V> DEFUNCT = new MapEntry<>(null, null);
+    private HashEntry<K, V>[] table; //declare the array which is the main table
+    private HashEntry<K, V>[] oldTable; //the table being migrated in the incremental mode
+    private HashEntry<K, V> DEFUNCT = new HashEntry<>(0, null, null);
+    private int defunct = 0; //number of defunct slots in the table
+    private double maxDefunct = 0.25; //fraction of defunct slots that triggers a cleanup
 
     /*Constructors*/
     public ProbeHashMap() {super(); }
     public ProbeHashMap(int cap) {super(cap); }
     public ProbeHashMap(int cap, int p) {super(cap, p); }
+    public ProbeHashMap(int cap, HashMode mode) {super(cap, mode); }
+
+    /**
+     * Sets the fraction of the table that may be taken by defunct slots before the next removal
+     * rebuilds the table at its current length. The default is 0.25, lowered by setLoadFactors
+     * when it does not fit beside the new maxLoad.
+     * @param maxDefunct double fraction of defunct slots, 0 < maxDefunct <= 1 - maxLoad
+     * @throws IllegalArgumentException if the fraction is out of range
+     */
+    public void setMaxDefunct(double maxDefunct) throws IllegalArgumentException {
+        if (!(maxDefunct > 0 && maxDefunct + getMaxLoad() < 1))
+            throw new IllegalArgumentException("maxDefunct must be between 0 and 1 - maxLoad");
+        this.maxDefunct = maxDefunct;
+    }
+
+    /**
+     * Keeps maxDefunct + maxLoad below 1 when the load factors change, so that the table always
+     * has empty slots to end the probe sequences of misses: a maxDefunct that no longer fits is
+     * lowered to half of the room left by the new maxLoad.
+     * @param maxLoad double new load factor that triggers growing
+     * @param minLoad double new load factor that triggers shrinking
+     */
+    protected void checkLoadFactors(double maxLoad, double minLoad) {
+        if (maxDefunct + maxLoad >= 1)
+            maxDefunct = (1 - maxLoad) / 2;
+    }
+
+    /**
+     * @return int the number of defunct slots left in the table by removals
+     */
+    public int defunctCount() {return defunct; }
 
     /**
      * Create the main table which is an array of entries
      */
     protected void createTable() {
-        table = (MapEntry<K, V>[]) new MapEntry[capacity];
+        table = (HashEntry<K, V>[]) new HashEntry[capacity];
+        defunct = 0;
+    }
+
+    /**
+     * Tells whether the defunct slots exceed their allowed fraction of the table.
+     * @return true if the table should be rebuilt to clear the defunct slots
+     */
+    protected boolean needsCleanup() {return defunct > capacity * maxDefunct; }
+
+    /**
+     * Moves the entries of the current table into a new table, reusing the entry objects.
+     */
+    protected void rehash() {
+        HashEntry<K, V>[] old = table;
+        createTable();
+        for (HashEntry<K, V> entry : old)
+            if (entry != null && entry != DEFUNCT)
+                transfer(entry);
+    }
+
+    /**
+     * Places an entry whose key is known to be absent from the current table at the first
+     * available slot of its probe sequence, without comparing keys or calling hashCode().
+     * A defunct slot that is filled no longer counts as defunct.
+     * @param entry the entry to be placed
+     */
+    private void transfer(HashEntry<K, V> entry) {
+        int i = index(entry.getHash());
+        while (!isAvailable(i))
+            i = nextIndex(i, capacity);
+        if (table[i] == DEFUNCT) defunct--;
+        table[i] = entry;
     }
 
+    /**
+     * Keeps the current table as the old table and creates an empty new table.
+     * @return true, this map supports the incremental mode
+     */
+    protected boolean beginMigration() {
+        oldTable = table;
+        createTable();
+        return true;
+    }
+
+    /**
+     * Moves the entry at slot j of the old table into the new table. The old slot is marked as
+     * defunct so that the probe sequences of the remaining old entries stay intact.
+     * @param j int index of the slot in the old table
+     */
+    protected void migrateBucket(int j) {
+        HashEntry<K, V> entry = oldTable[j];
+        if (entry != null && entry != DEFUNCT) {
+            transfer(entry);
+            oldTable[j] = DEFUNCT;
+        }
+    }
+
+    /**
+     * Searches the old table for the given key and moves its entry into the new table.
+     * @param h int hash code of the key
+     * @param k K key element of the entry
+     */
+    protected void migrateKey(int h, K k) {
+        int start = index(h, oldTable.length);
+        int i = start;
+        do {
+            HashEntry<K, V> entry = oldTable[i];
+            if (entry == null) return;
+            if (entry != DEFUNCT && entry.getHash() == h && entry.getKey().equals(k)) {
+                migrateBucket(i);
+                return;
+            }
+            i = nextIndex(i, oldTable.length);
+        } while (i != start);
+    }
+
+    /**
+     * Releases the old table.
+     */
+    protected void endMigration() {oldTable = null; }
+
     /**
      * Checks an index of the table if it is null or defunct
      * @param i int index to test
@@ -39,15 +156,16 @@ public class ProbeHashMap<K, V> extends AbstractHashMap<K, V> {
      */
     private int findSlot(int h, K k) {
         int available = -1;
-        int i = h;
+        int start = index(h);
+        int i = start;
         do {
             if (isAvailable(i)) {
                 if (available == -1) available = i;
                 if (table[i] == null) break;
-            } else if (table[i].getKey().equals(k))
+            } else if (table[i].getHash() == h && table[i].getKey().equals(k))
                 return i;
-            i = (i + 1) % capacity;
-        } while (i != h);
+            i = nextIndex(i, capacity);
+        } while (i != start);
         return -(available + 1);
     }
 
@@ -75,11 +193,49 @@ public class ProbeHashMap<K, V> extends AbstractHashMap<K, V> {
         int i = findSlot(h, k);
         if (i >= 0)
             return table[i].setValue(v);
-        table[-(i + 1)] = new MapEntry<>(k, v);
+        i = -(i + 1);
+        if (table[i] == DEFUNCT) defunct--;
+        table[i] = new HashEntry<>(h, k, v);
         n++;
+        modCount++;
         return null;
     }
 
+    /**
+     * Computes the new value of the entry with the given hash code and key with a single probe
+     * sequence, then updates the entry, fills the available slot or marks the slot defunct if the
+     * new value is null.
+     * @param h int hash code of the entry
+     * @param k K key element of the entry
+     * @param f function of the key and the current value (or null) giving the new value
+     * @return V the new value
+     * @throws ConcurrentModificationException if the function modifies the map
+     */
+    protected V bucketCompute(int h, K k, BiFunction<? super K, ? super V, ? extends V> f)
+            throws ConcurrentModificationException {
+        int i = findSlot(h, k);
+        int expectedModCount = modCount;
+        V value = f.apply(k, (i < 0) ? null : table[i].getValue());
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        if (i >= 0) {
+            if (value != null)
+                table[i].setValue(value);
+            else {
+                table[i] = DEFUNCT;
+                defunct++;
+                n--;
+                modCount++;
+            }
+        } else if (value != null) {
+            i = -(i + 1);
+            if (table[i] == DEFUNCT) defunct--;
+            table[i] = new HashEntry<>(h, k, value);
+            n++;
+            modCount++;
+        }
+        return value;
+    }
+
     /**
      * Removes entry having key k from bucket with hash value h (if any).
      * @param h int hash code of the entry to be removed
@@ -91,18 +247,50 @@ public class ProbeHashMap<K, V> extends AbstractHashMap<K, V> {
         if (i < 0) return null;
         V removed = table[i].getValue();
         table[i] = DEFUNCT;
+        defunct++;
         n--;
+        modCount++;
         return removed;
     }
 
     /**
-     * Returns an iterable collection of all key-value entries of the map.
-     * @return Iterable collection of all the entries
+     * Supporting classes for a lazy iterator that walks the slots of the table in place.
+     * The iterator fails fast if the map is structurally modified after it is created.
      */
-    public Iterable<Entry<K, V>> entrySet() {
-        ArrayList<Entry<K, V>> buffer = new ArrayList<>();
-        for (int h = 0; h < capacity; h++)
-            if (!isAvailable(h)) buffer.add(table[h]);
-        return buffer;
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int i = 0; //index of the next slot to test
+        private int expectedModCount;
+
+        public EntryIterator() {
+            completeMigration();
+            expectedModCount = modCount;
+        }
+
+        public boolean hasNext() {
+            while (i < capacity && isAvailable(i)) i++;
+            return i < capacity;
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return table[i++];
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
     }
- }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Returns an iterable collection of all key-value entries of the map, which is a live
+     * view of the table rather than a copy.
+     * @return Iterable collection of all the entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
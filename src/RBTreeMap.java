@@ -0,0 +1,106 @@
+import java.util.Comparator;
+
+/**
+ * An implementation of a sorted map using a red-black tree. The aux field of each node holds its
+ * color, 1 for red and 0 for black (the sentinel leaves are black). The root is black, a red node
+ * has black children and every path from a node down to a leaf meets the same number of black
+ * nodes, so get, put and remove take O(log n) time for any order of the keys, with at most two
+ * rotations per insert and three per remove.
+ * @param <K> key element of the entries
+ * @param <V> value element of the entries
+ */
+public class RBTreeMap<K, V> extends TreeMap<K, V> {
+
+    public RBTreeMap() {super(); }
+
+    public RBTreeMap(Comparator<K> comp) {super(comp); }
+
+    /*Color accessors*/
+    private boolean isBlack(Position<Entry<K, V>> p) {return tree.getAux(p) == 0; }
+    private boolean isRed(Position<Entry<K, V>> p) {return tree.getAux(p) == 1; }
+    private void makeBlack(Position<Entry<K, V>> p) {tree.setAux(p, 0); }
+    private void makeRed(Position<Entry<K, V>> p) {tree.setAux(p, 1); }
+    private void setColor(Position<Entry<K, V>> p, boolean toRed) {tree.setAux(p, toRed ? 1 : 0); }
+
+    /**
+     * Colors the new node red, unless it is the root, and repairs a red parent.
+     * @param p the position which was recently inserted
+     */
+    protected void rebalanceInsert(Position<Entry<K, V>> p) {
+        if (!isRoot(p)) {
+            makeRed(p);
+            resolveRed(p);
+        }
+    }
+
+    /**
+     * Removes a double red at the red position p and its parent, by a restructure if the uncle of
+     * p is black, or by recoloring and repeating at the grandparent if the uncle is red.
+     * @param p a red position
+     */
+    private void resolveRed(Position<Entry<K, V>> p) {
+        Position<Entry<K, V>> parent = parent(p);
+        if (isRed(parent)) {
+            Position<Entry<K, V>> uncle = sibling(parent);
+            if (isBlack(uncle)) {
+                Position<Entry<K, V>> middle = restructure(p);
+                makeBlack(middle);
+                makeRed(left(middle));
+                makeRed(right(middle));
+            } else {
+                makeBlack(parent);
+                makeBlack(uncle);
+                Position<Entry<K, V>> grand = parent(parent);
+                if (!isRoot(grand)) {
+                    makeRed(grand);
+                    resolveRed(grand);
+                }
+            }
+        }
+    }
+
+    /**
+     * Repairs the tree after the removal of the parent of p. A red p takes the black of the removed
+     * node; a black p whose sibling subtree is now one black node heavier is a double black.
+     * @param p the position of the sibling of the removed leaf
+     */
+    protected void rebalanceDelete(Position<Entry<K, V>> p) {
+        if (isRed(p))
+            makeBlack(p);
+        else if (!isRoot(p)) {
+            Position<Entry<K, V>> sib = sibling(p);
+            if (isInternal(sib) && (isBlack(sib) || isInternal(left(sib))))
+                remedyDoubleBlack(p);
+        }
+    }
+
+    /**
+     * Removes the double black at the black position p, whose subtree has one black node less than
+     * the subtree of its sibling.
+     * @param p a black position with a black deficit
+     */
+    private void remedyDoubleBlack(Position<Entry<K, V>> p) {
+        Position<Entry<K, V>> z = parent(p);
+        Position<Entry<K, V>> y = sibling(p);
+        if (isBlack(y)) {
+            if (isRed(left(y)) || isRed(right(y))) {    //black sibling with a red child: restructure
+                Position<Entry<K, V>> x = isRed(left(y)) ? left(y) : right(y);
+                Position<Entry<K, V>> middle = restructure(x);
+                setColor(middle, isRed(z));
+                makeBlack(left(middle));
+                makeBlack(right(middle));
+            } else {                                    //black sibling with black children: recolor
+                makeRed(y);
+                if (isRed(z))
+                    makeBlack(z);
+                else if (!isRoot(z))
+                    remedyDoubleBlack(z);
+            }
+        } else {                                        //red sibling: rotate, then one of the cases above
+            rotate(y);
+            makeBlack(y);
+            makeRed(z);
+            remedyDoubleBlack(p);
+        }
+    }
+}
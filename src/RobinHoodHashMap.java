@@ -0,0 +1,204 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map that uses Robin Hood hashing, a variant of linear probing for collision resolution.
+ * An inserted entry takes the slot of any entry that is closer to its home slot than the inserted
+ * one is, so the distances of the entries from their home slots stay close to each other, and
+ * a search can stop as soon as it reaches an entry closer to its home than the search is.
+ * Removal shifts the following entries of the cluster one slot back instead of leaving a defunct
+ * marker, so the table never contains tombstones.
+ * @param <K> key element of the entry
+ * @param <V> value element of the entry
+ */
+public class RobinHoodHashMap<K, V> extends AbstractHashMap<K, V> {
+    private HashEntry<K, V>[] table; //the main table, null marks an empty slot
+
+    /*Constructors*/
+    public RobinHoodHashMap() {super(); }
+    public RobinHoodHashMap(int cap) {super(cap); }
+    public RobinHoodHashMap(int cap, int p) {super(cap, p); }
+    public RobinHoodHashMap(int cap, HashMode mode) {super(cap, mode); }
+
+    /**
+     * Create the main table which is an array of entries
+     */
+    protected void createTable() {
+        table = (HashEntry<K, V>[]) new HashEntry[capacity];
+    }
+
+    /**
+     * Gives the distance of the entry at slot i from its home slot.
+     * @param i int index of a non-empty slot
+     * @return int number of slots between the home slot of the entry and i
+     */
+    private int distance(int i) {
+        int d = i - index(table[i].getHash());
+        return (d < 0) ? d + capacity : d;
+    }
+
+    /**
+     * Returns the index of the entry with the given hash code and key, or -1 if there is no such entry.
+     * @param h int hash code
+     * @param k key element
+     * @return int index of the entry or -1
+     */
+    private int findSlot(int h, K k) {
+        int i = index(h);
+        for (int d = 0; table[i] != null && distance(i) >= d; d++) {
+            if (table[i].getHash() == h && table[i].getKey().equals(k))
+                return i;
+            i = nextIndex(i, capacity);
+        }
+        return -1;
+    }
+
+    /**
+     * Places an entry whose key is known to be absent from the table, displacing the entries that
+     * are closer to their home slots than the carried entry is.
+     * @param entry the entry to be placed
+     */
+    private void insert(HashEntry<K, V> entry) {
+        int i = index(entry.getHash());
+        int d = 0;
+        while (table[i] != null) {
+            int existing = distance(i);
+            if (existing < d) {
+                HashEntry<K, V> displaced = table[i];
+                table[i] = entry;
+                entry = displaced;
+                d = existing;
+            }
+            i = nextIndex(i, capacity);
+            d++;
+        }
+        table[i] = entry;
+    }
+
+    /**
+     * Moves the entries of the current table into a new table, reusing the entry objects.
+     */
+    protected void rehash() {
+        HashEntry<K, V>[] old = table;
+        createTable();
+        for (HashEntry<K, V> entry : old)
+            if (entry != null)
+                insert(entry);
+    }
+
+    /**
+     * Gives the value of the entry with the given hash code and key element or null if
+     * there is no such entry
+     * @param h int hash code of the entry
+     * @param k key element of the entry
+     * @return V value
+     */
+    protected V bucketGet(int h, K k) {
+        int i = findSlot(h, k);
+        if (i < 0) return null;
+        return table[i].getValue();
+    }
+
+    /**
+     * Associates key k with value v in bucket with hash value h; returns old value
+     * @param h int hash code of the new entry
+     * @param k K key element of the new entry
+     * @param v V value element of the new entry, or the new value of the existing entry
+     * @return null or old value
+     */
+    protected V bucketPut(int h, K k, V v) {
+        int i = findSlot(h, k);
+        if (i >= 0)
+            return table[i].setValue(v);
+        insert(new HashEntry<>(h, k, v));
+        n++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Removes entry having key k from bucket with hash value h (if any), then shifts the following
+     * displaced entries of the cluster one slot back towards their home slots.
+     * @param h int hash code of the entry to be removed
+     * @param k K key element of the entry to be removed
+     * @return returns the removed value of the entry
+     */
+    protected V bucketRemove(int h, K k) {
+        int i = findSlot(h, k);
+        if (i < 0) return null;
+        V removed = table[i].getValue();
+        int j = nextIndex(i, capacity);
+        while (table[j] != null && distance(j) > 0) {
+            table[i] = table[j];
+            i = j;
+            j = nextIndex(j, capacity);
+        }
+        table[i] = null;
+        n--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Gives the greatest number of slots a successful search examines, which is one more than the
+     * greatest distance of an entry from its home slot. Scans the whole table.
+     * @return int the maximum probe length, 0 if the map is empty
+     */
+    public int maxProbeLength() {
+        int max = 0;
+        for (int i = 0; i < capacity; i++)
+            if (table[i] != null)
+                max = Math.max(max, distance(i) + 1);
+        return max;
+    }
+
+    /**
+     * Gives the average number of slots a successful search examines. Scans the whole table.
+     * @return double the mean probe length, 0 if the map is empty
+     */
+    public double meanProbeLength() {
+        if (n == 0) return 0;
+        long total = 0;
+        for (int i = 0; i < capacity; i++)
+            if (table[i] != null)
+                total += distance(i) + 1;
+        return (double) total / n;
+    }
+
+    /**
+     * Supporting classes for a lazy iterator that walks the slots of the table in place.
+     * The iterator fails fast if the map is structurally modified after it is created.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int i = 0; //index of the next slot to test
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (i < capacity && table[i] == null) i++;
+            return i < capacity;
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return table[i++];
+        }
+
+        /**
+         * The remove method of the interface is not supported.
+         */
+        public void remove() {throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {return new EntryIterator(); }
+    }
+
+    /**
+     * Returns an iterable collection of all key-value entries of the map, which is a live
+     * view of the table rather than a copy.
+     * @return Iterable collection of all the entries
+     */
+    public Iterable<Entry<K, V>> entrySet() {return new EntryIterable(); }
+}
@@ -0,0 +1,98 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns objects into bytes and back for the maps that keep their entries outside of the Java heap.
+ * The methods use absolute offsets and never move the position of the buffers. Two objects that
+ * are equal must have the same serialized form, because the maps compare keys by their bytes.
+ * @param <T> type of the serialized objects
+ */
+public interface Serializer<T> {
+
+    /**
+     * @param value object to be serialized
+     * @return int number of bytes of the serialized form of value
+     */
+    int size(T value);
+
+    /**
+     * Writes the serialized form of value, size(value) bytes, into out starting at offset.
+     * @param value object to be serialized
+     * @param out buffer to write to
+     * @param offset int index of the first byte
+     */
+    void write(T value, ByteBuffer out, int offset);
+
+    /**
+     * Reads an object from the given bytes of in.
+     * @param in buffer to read from
+     * @param offset int index of the first byte
+     * @param length int number of bytes of the serialized form
+     * @return the object
+     */
+    T read(ByteBuffer in, int offset, int length);
+
+    /**
+     * Strings in UTF-8.
+     */
+    Serializer<String> STRING = new Serializer<String>() {
+        //the last string measured by this thread and its bytes, so that write() reuses them
+        private final ThreadLocal<Object[]> last = ThreadLocal.withInitial(() -> new Object[2]);
+
+        /**
+         * Encodes the string once for a size() followed by a write() of the same string. The
+         * length and the bytes come from the same encoding, so they agree even for lone surrogates.
+         */
+        private byte[] encode(String value) {
+            Object[] cached = last.get();
+            if (cached[0] != value) {
+                cached[1] = value.getBytes(StandardCharsets.UTF_8);
+                cached[0] = value;
+            }
+            return (byte[]) cached[1];
+        }
+
+        public int size(String value) {return encode(value).length; }
+
+        public void write(String value, ByteBuffer out, int offset) {
+            out.put(offset, encode(value));
+        }
+
+        public String read(ByteBuffer in, int offset, int length) {
+            byte[] bytes = new byte[length];
+            in.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Integers as 4 bytes.
+     */
+    Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        public int size(Integer value) {return 4; }
+        public void write(Integer value, ByteBuffer out, int offset) {out.putInt(offset, value); }
+        public Integer read(ByteBuffer in, int offset, int length) {return in.getInt(offset); }
+    };
+
+    /**
+     * Longs as 8 bytes.
+     */
+    Serializer<Long> LONG = new Serializer<Long>() {
+        public int size(Long value) {return 8; }
+        public void write(Long value, ByteBuffer out, int offset) {out.putLong(offset, value); }
+        public Long read(ByteBuffer in, int offset, int length) {return in.getLong(offset); }
+    };
+
+    /**
+     * Byte arrays as they are.
+     */
+    Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+        public int size(byte[] value) {return value.length; }
+        public void write(byte[] value, ByteBuffer out, int offset) {out.put(offset, value); }
+        public byte[] read(ByteBuffer in, int offset, int length) {
+            byte[] bytes = new byte[length];
+            in.get(offset, bytes);
+            return bytes;
+        }
+    };
+}
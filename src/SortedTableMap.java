@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.function.BiFunction;
 
 /**
  * An implementation of the SortedTableMap class. The AbstractSortedMap base class
@@ -82,6 +83,27 @@ public class SortedTableMap<K, V> extends AbstractSortedMap<K, V>  {
         return table.remove(i).getValue();
     }
 
+    /**
+     * Computes a new value for the given key from its current value (or null) with a single binary
+     * search, then updates the entry, inserts a new one at the found index, or removes the entry if
+     * the new value is null. The remapping function must not modify the map.
+     * @param key key of the entry to be computed
+     * @param remappingFunction function of the key and the current value giving the new value
+     * @return the new value, or null if the map has no entry with the key afterwards
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        int i = findIndex(key);
+        boolean found = i < size() && compare(key, table.get(i)) == 0;
+        V value = remappingFunction.apply(key, found ? table.get(i).getValue() : null);
+        if (value == null) {
+            if (found) table.remove(i);
+        } else if (found)
+            table.get(i).setValue(value);
+        else
+            table.add(i, new MapEntry<K, V>(key, value));
+        return value;
+    }
+
     /**
      * Utility returns the entry at index j, or else null if j is out of bounds.
      * @param i index of the entry to return.
@@ -142,6 +164,48 @@ public class SortedTableMap<K, V> extends AbstractSortedMap<K, V>  {
         return safeEntry(i);
     }
 
+    /**
+     * Returns the number of entries with keys strictly less than the given key, which is the
+     * index the key has (or would have) in the table.
+     * @param key the key to compare
+     * @return number of entries with lesser keys
+     */
+    public int rank(K key) {return findIndex(key); }
+
+    /**
+     * Returns the entry with the given index in the order of the keys, 0 for the least key.
+     * @param index index of the entry
+     * @return entry with the given index
+     * @throws IllegalArgumentException if the index is not in the range 0 to size()-1
+     */
+    public Entry<K, V> select(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= size())
+            throw new IllegalArgumentException("index out of range: " + index);
+        return table.get(index);
+    }
+
+    /**
+     * Returns the number of entries with keys in the range fromKey (inclusive) to toKey (exclusive).
+     * @param fromKey starting key value
+     * @param toKey ending key value
+     * @return number of entries in the range
+     */
+    public int countRange(K fromKey, K toKey) {return Math.max(0, findIndex(toKey) - findIndex(fromKey)); }
+
+    /**
+     * Returns the entry at the given quantile of the keys by the nearest-rank method: the least
+     * key such that a fraction q of the entries have keys less than or equal to it.
+     * @param q fraction of the entries, 0 &lt;= q &lt;= 1
+     * @return entry at the quantile or null if the map is empty
+     * @throws IllegalArgumentException if q is not in the range 0 to 1
+     */
+    public Entry<K, V> percentile(double q) throws IllegalArgumentException {
+        if (!(q >= 0 && q <= 1))
+            throw new IllegalArgumentException("q must be between 0 and 1");
+        if (table.isEmpty()) return null;
+        return table.get(Math.max(0, (int) Math.ceil(q * size()) - 1));
+    }
+
     // support for snapshot iterators for entrySet() and subMap() follow
 
     /**
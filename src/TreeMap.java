@@ -20,8 +20,11 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
 
 /**
  * An implementation of a sorted map using a binary search tree.
@@ -37,7 +40,7 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
      * A specialized version of the LinkedBinaryTree class with
      * additional mutators to support binary search tree operations, and
      * a specialized node class that includes an auxiliary instance
-     * variable for balancing data.
+     * variable for balancing data and the number of entries in its subtree.
      */
     protected static class BalanceableBinaryTree<K,V>
             extends LinkedBinaryTree<Entry<K,V>> {
@@ -45,6 +48,7 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
         // this extends the inherited LinkedBinaryTree.Node class
         protected static class BSTNode<E> extends Node<E> {
             int aux=0;
+            int count=0;                               // internal nodes in the subtree, 0 for a leaf
             BSTNode(E e, Node<E> parent, Node<E> leftChild, Node<E> rightChild) {
                 super(e, parent, leftChild, rightChild);
             }
@@ -61,6 +65,24 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
             ((BSTNode<Entry<K,V>>) p).setAux(value);
         }
 
+        // positional-based methods related to the subtree counts
+        /** Returns the number of entries in the subtree rooted at p. */
+        public int count(Position<Entry<K,V>> p) {
+            return ((BSTNode<Entry<K,V>>) p).count;
+        }
+
+        /** Adds delta to the counts of p and all of its ancestors. */
+        public void addCount(Position<Entry<K,V>> p, int delta) {
+            for (Node<Entry<K,V>> walk = validate(p); walk != null; walk = walk.getParent())
+                ((BSTNode<Entry<K,V>>) walk).count += delta;
+        }
+
+        /** Recomputes the count of the internal node x from the counts of its children. */
+        private void recount(Node<Entry<K,V>> x) {
+            ((BSTNode<Entry<K,V>>) x).count =
+                    1 + count(x.getLeft()) + count(x.getRight());
+        }
+
         // Override node factory function to produce a BSTNode (rather than a Node)
         @Override
         protected
@@ -108,6 +130,8 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
                 relink(y, x.getLeft(), false);           // x's left child becomes y's right
                 relink(x, y, true);                      // y becomes left child of x
             }
+            recount(y);                                  // y is now below x
+            recount(x);
         }
 
         /**
@@ -151,6 +175,9 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
     /** Representation of the underlying tree structure. */
     protected BalanceableBinaryTree<K,V> tree = new BalanceableBinaryTree<>();
 
+    /** Number of insertions and removals, used by fail-fast iterators. */
+    protected int modCount = 0;
+
     /** Constructs an empty map using the natural ordering of keys. */
     public TreeMap() {
         super();                  // the AbstractSortedMap constructor
@@ -180,6 +207,8 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
         tree.set(p, entry);            // store new entry at p
         tree.addLeft(p, null);         // add new sentinel leaves as children
         tree.addRight(p, null);
+        tree.addCount(p, 1);           // p and its ancestors gain an entry
+        modCount++;
     }
 
 
@@ -199,20 +228,19 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
 
     /**
      * Returns the position in p's subtree having the given key (or else the terminal leaf).
+     * The descent is a loop, so a degenerate tree cannot overflow the stack.
      * @param key  a target key
      * @param p  a position of the tree serving as root of a subtree
      * @return Position holding key, or last node reached during search
      */
     private Position<Entry<K,V>> treeSearch(Position<Entry<K,V>> p, K key) {
-        if (isExternal(p))
-            return p;                          // key not found; return the final leaf
-        int comp = compare(key, p.getElement());
-        if (comp == 0)
-            return p;                          // key found; return its position
-        else if (comp < 0)
-            return treeSearch(left(p), key);   // search left subtree
-        else
-            return treeSearch(right(p), key);  // search right subtree
+        while (isInternal(p)) {
+            int comp = compare(key, p.getElement());
+            if (comp == 0)
+                return p;                      // key found; return its position
+            p = (comp < 0) ? left(p) : right(p);
+        }
+        return p;                              // key not found; return the final leaf
     }
 
     /**
@@ -294,20 +322,63 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
             return null;
         } else {
             V old = p.getElement().getValue();
-            if (isInternal(left(p)) && isInternal(right(p))) { // both children are internal
-                Position<Entry<K,V>> replacement = treeMax(left(p));
-                set(p, replacement.getElement());
-                p = replacement;
-            } // now p has at most one child that is an internal node
-            Position<Entry<K,V>> leaf = (isExternal(left(p)) ? left(p) : right(p));
-            Position<Entry<K,V>> sib = sibling(leaf);
-            remove(leaf);
-            remove(p);                            // sib is promoted in p's place
-            rebalanceDelete(sib);                 // hook for balanced tree subclasses
+            removePosition(p);
             return old;
         }
     }
 
+    /**
+     * Removes the entry stored at the internal position p of the tree.
+     * @param p  an internal position of the tree
+     */
+    private void removePosition(Position<Entry<K,V>> p) {
+        if (isInternal(left(p)) && isInternal(right(p))) { // both children are internal
+            Position<Entry<K,V>> replacement = treeMax(left(p));
+            set(p, replacement.getElement());
+            p = replacement;
+        } // now p has at most one child that is an internal node
+        Position<Entry<K,V>> leaf = (isExternal(left(p)) ? left(p) : right(p));
+        Position<Entry<K,V>> sib = sibling(leaf);
+        remove(leaf);
+        remove(p);                              // sib is promoted in p's place
+        if (!isRoot(sib))
+            tree.addCount(parent(sib), -1);       // the ancestors of sib lose an entry
+        modCount++;
+        rebalanceDelete(sib);                   // hook for balanced tree subclasses
+    }
+
+    /**
+     * Computes a new value for the given key from its current value (or null) with
+     * a single search of the tree, then replaces the entry, expands the leaf where the
+     * search ended, or removes the entry if the new value is null. The remapping
+     * function must not modify the map.
+     * @param key  key of the entry to be computed
+     * @param remappingFunction  function of the key and the current value giving the new value
+     * @return the new value, or null if the map has no entry with the key afterwards
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+            throws IllegalArgumentException {
+        checkKey(key);                          // may throw IllegalArgumentException
+        Position<Entry<K,V>> p = treeSearch(root(), key);
+        V old = isExternal(p) ? null : p.getElement().getValue();
+        V value = remappingFunction.apply(key, old);
+        if (value == null) {
+            if (isExternal(p))
+                rebalanceAccess(p);               // hook for balanced tree subclasses
+            else
+                removePosition(p);
+        } else if (isExternal(p)) {             // key is new
+            expandExternal(p, new MapEntry<>(key, value));
+            rebalanceInsert(p);                   // hook for balanced tree subclasses
+        } else {                                // replacing existing value
+            set(p, new MapEntry<>(key, value));
+            rebalanceAccess(p);                   // hook for balanced tree subclasses
+        }
+        return value;
+    }
+
     // additional behaviors of the SortedMap interface
     /**
      * Returns the entry having the least key (or null if map is empty).
@@ -338,17 +409,44 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
     @Override
     public Entry<K,V> ceilingEntry(K key) throws IllegalArgumentException {
         checkKey(key);                              // may throw IllegalArgumentException
+        Position<Entry<K,V>> p = ceilingPosition(key);
+        return (p == null) ? null : p.getElement();
+    }
+
+    /**
+     * Returns the internal position with the least key greater than or equal to given key.
+     * @param key  a target key
+     * @return Position of the ceiling entry, or null if no such key exists
+     */
+    private Position<Entry<K,V>> ceilingPosition(K key) {
         Position<Entry<K,V>> p = treeSearch(root(), key);
-        if (isInternal(p)) return p.getElement();   // exact match
+        if (isInternal(p)) return p;                // exact match
         while (!isRoot(p)) {
             if (p == left(parent(p)))
-                return parent(p).getElement();          // parent has next greater key
+                return parent(p);                       // parent has next greater key
             else
                 p = parent(p);
         }
         return null;                                // no such ceiling exists
     }
 
+    /**
+     * Returns the internal position following p in the order of the keys, walking down to the
+     * least key of the right subtree or up to the first ancestor reached from its left.
+     * @param p  an internal position
+     * @return Position of the successor, or null if p holds the greatest key
+     */
+    protected Position<Entry<K,V>> successor(Position<Entry<K,V>> p) {
+        if (isInternal(right(p)))
+            return treeMin(right(p));
+        while (!isRoot(p)) {
+            if (p == left(parent(p)))
+                return parent(p);
+            p = parent(p);
+        }
+        return null;
+    }
+
     /**
      * Returns the entry with greatest key less than or equal to given key
      * (or null if no such key exists).
@@ -413,23 +511,151 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
         return null;                                 // no such greater key exists
     }
 
+    // order statistics, answered from the subtree counts
+    /**
+     * Returns the number of entries with keys strictly less than the given key, which is also
+     * the index the key has (or would have) in the order of the keys. Takes O(depth) time.
+     * @param key  a target key
+     * @return number of entries with lesser keys
+     * @throws IllegalArgumentException if the key is not compatible with the map
+     */
+    public int rank(K key) throws IllegalArgumentException {
+        checkKey(key);                              // may throw IllegalArgumentException
+        int rank = 0;
+        Position<Entry<K,V>> p = root();
+        while (isInternal(p)) {
+            int comp = compare(key, p.getElement());
+            if (comp == 0)
+                return rank + tree.count(left(p));
+            if (comp < 0)
+                p = left(p);
+            else {
+                rank += tree.count(left(p)) + 1;      // the left subtree and p are lesser
+                p = right(p);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the entry with the given index in the order of the keys, 0 for the least key.
+     * Takes O(depth) time.
+     * @param index  index of the entry
+     * @return entry with the given index
+     * @throws IllegalArgumentException if the index is not in the range 0 to size()-1
+     */
+    public Entry<K,V> select(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= size())
+            throw new IllegalArgumentException("index out of range: " + index);
+        Position<Entry<K,V>> p = root();
+        while (true) {
+            int left = tree.count(left(p));
+            if (index == left)
+                return p.getElement();
+            if (index < left)
+                p = left(p);
+            else {
+                index -= left + 1;
+                p = right(p);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries with keys in the range from <code>fromKey</code>
+     * inclusive to <code>toKey</code> exclusive, without visiting them.
+     * @return number of entries in the range
+     * @throws IllegalArgumentException if <code>fromKey</code> or <code>toKey</code> is not compatible with the map
+     */
+    public int countRange(K fromKey, K toKey) throws IllegalArgumentException {
+        return Math.max(0, rank(toKey) - rank(fromKey));
+    }
+
+    /**
+     * Returns the entry at the given quantile of the keys by the nearest-rank method: the least
+     * key such that a fraction q of the entries have keys less than or equal to it. A q of 0
+     * gives the least key and 0.99 the 99th-percentile key.
+     * @param q  fraction of the entries, 0 &lt;= q &lt;= 1
+     * @return entry at the quantile (or null if map is empty)
+     * @throws IllegalArgumentException if q is not in the range 0 to 1
+     */
+    public Entry<K,V> percentile(double q) throws IllegalArgumentException {
+        if (!(q >= 0 && q <= 1))
+            throw new IllegalArgumentException("q must be between 0 and 1");
+        if (isEmpty()) return null;
+        return select(Math.max(0, (int) Math.ceil(q * size()) - 1));
+    }
+
     // Support for iteration
+    /**
+     * A lazy iterator that walks from an internal position to its successor, up to (but
+     * excluding) the first key that is not less than an optional bound. It takes O(1) extra
+     * space, and fails fast if an entry is inserted or removed after it is created.
+     */
+    private class EntryIterator implements Iterator<Entry<K,V>> {
+        private Position<Entry<K,V>> next;             // position of the next entry, or null
+        private final K toKey;                         // bound of the range, null for the end
+        private final int expectedModCount = modCount;
+
+        public EntryIterator(Position<Entry<K,V>> first, K toKey) {
+            next = first;
+            this.toKey = toKey;
+        }
+
+        /**
+         * Does not read the next position once the map is modified, as it may have been removed;
+         * next() then throws the ConcurrentModificationException.
+         */
+        public boolean hasNext() {
+            if (next == null) return false;
+            if (modCount != expectedModCount) return true;
+            return toKey == null || compare(next.getElement(), toKey) < 0;
+        }
+
+        public Entry<K,V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            Position<Entry<K,V>> answer = next;
+            next = successor(next);
+            return answer.getElement();
+        }
+
+        public void remove() { throw new UnsupportedOperationException(); }
+    }
+
+    private class EntryIterable implements Iterable<Entry<K,V>> {
+        private final K fromKey, toKey;                // range of the keys, null for the whole map
+
+        public EntryIterable(K fromKey, K toKey) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+        }
+
+        public Iterator<Entry<K,V>> iterator() {
+            Position<Entry<K,V>> first;
+            if (isEmpty())
+                first = null;
+            else
+                first = (fromKey == null) ? treeMin(root()) : ceilingPosition(fromKey);
+            return new EntryIterator(first, toKey);
+        }
+    }
+
     /**
      * Returns an iterable collection of all key-value entries of the map.
+     * The entries are produced lazily, in the order of the keys.
      *
      * @return iterable collection of the map's entries
      */
     @Override
     public Iterable<Entry<K,V>> entrySet() {
-        ArrayList<Entry<K,V>> buffer = new ArrayList<>(size());
-        for (Position<Entry<K,V>> p : tree.inorder())
-            if (isInternal(p)) buffer.add(p.getElement());
-        return buffer;
+        return new EntryIterable(null, null);
     }
 
     /**
      * Returns an iterable containing all entries with keys in the range from
-     * <code>fromKey</code> inclusive to <code>toKey</code> exclusive.
+     * <code>fromKey</code> inclusive to <code>toKey</code> exclusive. An iteration takes
+     * O(log n + k) time for k entries in the range.
      * @return iterable with keys in desired range
      * @throws IllegalArgumentException if <code>fromKey</code> or <code>toKey</code> is not compatible with the map
      */
@@ -437,26 +663,7 @@ public class TreeMap<K,V> extends AbstractSortedMap<K,V> {
     public Iterable<Entry<K,V>> subMap(K fromKey, K toKey) throws IllegalArgumentException {
         checkKey(fromKey);                                // may throw IllegalArgumentException
         checkKey(toKey);                                  // may throw IllegalArgumentException
-        ArrayList<Entry<K,V>> buffer = new ArrayList<>(size());
-        if (compare(fromKey, toKey) < 0)                  // ensure that fromKey < toKey
-            subMapRecurse(fromKey, toKey, root(), buffer);
-        return buffer;
-    }
-
-    // utility to fill subMap buffer recursively (while maintaining order)
-    private void subMapRecurse(K fromKey, K toKey, Position<Entry<K,V>> p,
-                               ArrayList<Entry<K,V>> buffer) {
-        if (isInternal(p))
-            if (compare(p.getElement(), fromKey) < 0)
-                // p's key is less than fromKey, so any relevant entries are to the right
-                subMapRecurse(fromKey, toKey, right(p), buffer);
-            else {
-                subMapRecurse(fromKey, toKey, left(p), buffer); // first consider left subtree
-                if (compare(p.getElement(), toKey) < 0) {       // p is within range
-                    buffer.add(p.getElement());                      // so add it to buffer, and consider
-                    subMapRecurse(fromKey, toKey, right(p), buffer); // right subtree as well
-                }
-            }
+        return new EntryIterable(fromKey, toKey);
     }
 
     // Stubs for balanced search tree operations (subclasses can override)
@@ -4,16 +4,44 @@ import java.util.NoSuchElementException;
 
 /**
  * An implementation of Map structure based on ArrayLists in an unsorted constructor
+ * A lookup scans the table, so the map suits small tables. Two things help with larger or skewed
+ * tables: an AccessMode that reorders the table on every hit, so that frequently used keys are
+ * found early (MOVE_TO_FRONT moves the entry to the first index, TRANSPOSE swaps it with its
+ * predecessor), and a side index from the keys to their indexes in a ProbeHashMap, which is built
+ * once the table has more than indexThreshold entries and dropped when it shrinks to a quarter
+ * of that. While the index exists lookups do not scan and the table is not reordered.
  * @param <K> key element
  * @param <V> value element
  */
 public class UnsortedTableMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * The ways of reordering the table on a successful lookup.
+     */
+    public enum AccessMode {NONE, MOVE_TO_FRONT, TRANSPOSE}
+
     private ArrayList<MapEntry<K, V>> table = new ArrayList<>();
+    private final AccessMode mode;
+    private final int indexThreshold; //the index is built when the table grows past this size
+    private ProbeHashMap<K, Integer> index; //index of each key in the table, null while the table is small
+
+    /**
+     * Default constructor, no reordering and an index past 32 entries
+     */
+    public UnsortedTableMap() {this(AccessMode.NONE, 32); }
 
     /**
-     * Default constructor
+     * Constructor with the given reordering mode and index threshold.
+     * @param mode the way of reordering the table on a successful lookup
+     * @param indexThreshold int number of entries past which a side hash index is kept,
+     *                       Integer.MAX_VALUE to never build it
+     * @throws IllegalArgumentException if indexThreshold is negative
      */
-    public UnsortedTableMap() {}
+    public UnsortedTableMap(AccessMode mode, int indexThreshold) throws IllegalArgumentException {
+        if (indexThreshold < 0) throw new IllegalArgumentException("negative index threshold");
+        this.mode = mode;
+        this.indexThreshold = indexThreshold;
+    }
 
     /**
      * Checks a key if the entry with this key is already in the map.
@@ -21,13 +49,46 @@ public class UnsortedTableMap<K, V> extends AbstractMap<K, V> {
      * @return -1 if there is no entry with the given key, and the index number of the entry if there is
      */
     private int findIndex(K key) {
+        if (index != null) {
+            Integer i = index.get(key);
+            return (i == null) ? -1 : i;
+        }
         int n = table.size();
         for (int i = 0; i < n; i++)
             if (table.get(i).getKey().equals(key))
                 return i;
-            return -1;
+        return -1;
+    }
+
+    /**
+     * Reorders the table after a successful lookup of the entry at index i, unless the index exists.
+     * @param i int index of the entry found
+     * @return int the new index of the entry
+     */
+    private int access(int i) {
+        if (index != null || i == 0 || mode == AccessMode.NONE) return i;
+        if (mode == AccessMode.MOVE_TO_FRONT) {
+            table.add(0, table.remove(i));
+            return 0;
+        }
+        table.set(i, table.set(i - 1, table.get(i)));
+        return i - 1;
+    }
+
+    /**
+     * Builds the side index from the current table.
+     */
+    private void buildIndex() {
+        index = new ProbeHashMap<>(4 * table.size(), AbstractHashMap.HashMode.POWER_OF_TWO);
+        for (int i = 0; i < table.size(); i++)
+            index.put(table.get(i).getKey(), i);
     }
 
+    /**
+     * @return true if the side hash index is in use
+     */
+    public boolean isIndexed() {return index != null; }
+
     /**
      * @return gives the count of the entries in the map
      */
@@ -42,7 +103,7 @@ public class UnsortedTableMap<K, V> extends AbstractMap<K, V> {
         int i = findIndex(key);
         if (i == -1)
             return null;
-        return table.get(i).getValue();
+        return table.get(access(i)).getValue();
     }
 
     /**
@@ -56,13 +117,18 @@ public class UnsortedTableMap<K, V> extends AbstractMap<K, V> {
         int i = findIndex(key);
         if (i == -1) {
             table.add(new MapEntry<>(key, value));
+            if (index != null)
+                index.put(key, table.size() - 1);
+            else if (table.size() > indexThreshold)
+                buildIndex();
             return null;
         } else
-            return table.get(i).setValue(value);
+            return table.get(access(i)).setValue(value);
     }
 
     /**
-     * Remove the entry with the given key from the map.
+     * Remove the entry with the given key from the map. The last entry takes the place of the removed
+     * one, except in a reordering mode without the index, which keeps the order of the other entries.
      * @param key of the entry to be removed
      * @return the value of the removed entry, null if there is no such entry with the given key
      */
@@ -71,9 +137,19 @@ public class UnsortedTableMap<K, V> extends AbstractMap<K, V> {
         int n = size();
         if (i == -1) return null;
         V removed = table.get(i).getValue();
-        if (i != n -1)
+        if (index == null && mode != AccessMode.NONE) {
+            table.remove(i);
+            return removed;
+        }
+        if (i != n -1) {
             table.set(i, table.get(n - 1));
+            if (index != null) index.put(table.get(i).getKey(), i);
+        }
         table.remove(n - 1);
+        if (index != null) {
+            index.remove(key);
+            if (table.size() <= indexThreshold / 4) index = null;
+        }
         return removed;
     }
 